@@ -0,0 +1,211 @@
+package board;
+import io.DrawingOp;
+import io.InvalidFormatException;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Raster model of a whiteboard that drawings are applied to without any Swing component, so it can be owned by a
+ * server running without a display. Views read the image, all changes go through the board.
+ *
+ * The board is divided into square tiles, each stamped with the version of the last change that touched it, so the
+ * parts of the board changed since a given version can be sent instead of the whole image.
+ */
+public class Board {
+
+    public final static int TILE_SIZE = 64;
+
+    // Board Graphic Components
+    private BufferedImage image;
+    private Graphics2D g2;
+    private DrawingRenderer renderer;
+    private int width;
+    private int height;
+
+    // Tiles
+    private int columns;
+    private int rows;
+    private long[] tileVersions;    // Row-major
+    private long version;           // Version stamped on the tiles of later changes
+
+    /**
+     * Board constructor, creates a blank board
+     * @param width width
+     * @param height height
+     */
+    public Board(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        this.renderer = new DrawingRenderer(g2);
+        this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileVersions = new long[columns * rows];
+        this.version = 0;
+        clear();
+    }
+
+    /**
+     * Sets the version stamped on the tiles touched by later changes
+     * @param version version, normally the sequence number of the drawing or state about to be applied
+     */
+    public synchronized void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Applies a drawing
+     * @param drawing drawing
+     * @return area touched by the drawing
+     */
+    public synchronized Rectangle draw(DrawingOp drawing) {
+        Rectangle touched = renderer.draw(drawing);
+        touch(touched);
+        return touched;
+    }
+
+    /**
+     * Applies a list of drawings in order
+     * @param drawings drawings
+     * @return area touched by the drawings, or null if there were none
+     */
+    public synchronized Rectangle draw(List<DrawingOp> drawings) {
+        Rectangle touched = null;
+        for (DrawingOp drawing : drawings) {
+            Rectangle bounds = draw(drawing);
+            if (touched == null) {
+                touched = bounds;
+            } else {
+                touched.add(bounds);
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * Clears the board
+     */
+    public synchronized void clear() {
+        renderer.setPaint(Color.white);
+        g2.fillRect(0, 0, width, height);
+        Arrays.fill(tileVersions, version);
+    }
+
+    /**
+     * Replaces the board's content with an image (e.g. a previously saved board)
+     * @param newImage image
+     * @throws InvalidFormatException image could not be drawn
+     */
+    public synchronized void load(BufferedImage newImage) throws InvalidFormatException {
+        BufferedImage before = copyImage();
+        try {
+            g2.drawImage(newImage, 0, 0, newImage.getWidth(), newImage.getHeight(), null);
+        } catch (Exception e) {
+            throw new InvalidFormatException();
+        }
+        // Only the tiles whose pixels differ have changed
+        int[] previous = new int[TILE_SIZE * TILE_SIZE];
+        int[] current = new int[TILE_SIZE * TILE_SIZE];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                Rectangle tile = getTile(column, row);
+                before.getRGB(tile.x, tile.y, tile.width, tile.height, previous, 0, tile.width);
+                image.getRGB(tile.x, tile.y, tile.width, tile.height, current, 0, tile.width);
+                if (!Arrays.equals(previous, current)) {
+                    tileVersions[row * columns + column] = version;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the board's image that later drawings do not affect
+     * @return image copy
+     */
+    public synchronized BufferedImage copyImage() {
+        BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.copyData(copy.getRaster());
+        return copy;
+    }
+
+    /**
+     * Returns the parts of the board changed after a version, as runs of adjacent changed tiles in the same tile row
+     * @param since version the caller has, or a negative number for the whole board
+     * @return changed regions, from top to bottom
+     */
+    public synchronized List<Rectangle> getChangedRegions(long since) {
+        ArrayList<Rectangle> regions = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            Rectangle run = null;
+            for (int column = 0; column < columns; column++) {
+                if (since >= 0 && tileVersions[row * columns + column] <= since) {
+                    run = null;
+                } else if (run == null) {
+                    run = getTile(column, row);
+                    regions.add(run);
+                } else {
+                    run.width += getTile(column, row).width;
+                }
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Returns the version of the last change to a region of the board
+     * @param region region
+     * @return newest version of the tiles the region overlaps
+     */
+    public synchronized long getVersion(Rectangle region) {
+        long newest = 0;
+        int right = Math.min(columns - 1, (region.x + region.width - 1) / TILE_SIZE);
+        int bottom = Math.min(rows - 1, (region.y + region.height - 1) / TILE_SIZE);
+        for (int row = region.y / TILE_SIZE; row <= bottom; row++) {
+            for (int column = region.x / TILE_SIZE; column <= right; column++) {
+                newest = Math.max(newest, tileVersions[row * columns + column]);
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Stamps the tiles a change touched with the current version
+     * @param area area touched by the change
+     */
+    private void touch(Rectangle area) {
+        int left = Math.max(0, area.x / TILE_SIZE);
+        int top = Math.max(0, area.y / TILE_SIZE);
+        int right = Math.min(columns - 1, (area.x + area.width - 1) / TILE_SIZE);
+        int bottom = Math.min(rows - 1, (area.y + area.height - 1) / TILE_SIZE);
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                tileVersions[row * columns + column] = version;
+            }
+        }
+    }
+
+    /**
+     * Returns the area of a tile, which is smaller than the tile size at the board's right and bottom edges
+     * @param column tile column
+     * @param row tile row
+     * @return tile area
+     */
+    private Rectangle getTile(int column, int row) {
+        int x = column * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+    }
+
+    /**
+     * Returns the board's live image, for views to paint
+     * @return image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+}
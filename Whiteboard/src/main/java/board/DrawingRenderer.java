@@ -0,0 +1,118 @@
+package board;
+import io.DrawingOp;
+import io.MessageProtocol;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Draws drawings onto an image's graphics, shared by the server's board and the client's canvas so both render a
+ * drawing the same way. Drawings are applied in order, and the paint is only changed between drawings of different
+ * colors. Each drawing reports the area it touched, so callers can track or repaint only that area.
+ */
+public class DrawingRenderer {
+
+    private Graphics2D g2;
+    private Color paint;            // Paint currently set on the graphics
+
+    // Pixels a stroke may reach beyond a drawing's coordinates (antialiasing)
+    private final int STROKE_MARGIN = 2;
+
+    /**
+     * DrawingRenderer constructor
+     * @param g2 graphics of the image drawings are applied to, only changed through the renderer afterwards
+     */
+    public DrawingRenderer(Graphics2D g2) {
+        this.g2 = g2;
+        this.paint = null;
+    }
+
+    /**
+     * Applies a list of drawings in order
+     * @param drawings drawings
+     * @return area touched by the drawings, or null if there were none
+     */
+    public Rectangle draw(List<DrawingOp> drawings) {
+        Rectangle touched = null;
+        for (DrawingOp drawing : drawings) {
+            Rectangle bounds = draw(drawing);
+            if (touched == null) {
+                touched = bounds;
+            } else {
+                touched.add(bounds);
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * Applies a drawing
+     * @param drawing drawing
+     * @return area touched by the drawing
+     */
+    public Rectangle draw(DrawingOp drawing) {
+        String drawingType = drawing.getType();
+        switch (drawingType) {
+            case MessageProtocol.LINE:
+
+                setPaint(drawing.getColor());
+                g2.drawLine(drawing.getX1(), drawing.getY1(), drawing.getX2(), drawing.getY2());
+                return getBounds(drawing.getX1(), drawing.getY1(), drawing.getX2(), drawing.getY2());
+
+            case MessageProtocol.TEXT_BOX:
+
+                setPaint(drawing.getColor());
+                g2.drawString(drawing.getText(), drawing.getX(), drawing.getY());
+                Rectangle text = g2.getFontMetrics().getStringBounds(drawing.getText(), g2).getBounds();
+                text.translate(drawing.getX(), drawing.getY());
+                return getBounds(text.x, text.y, text.x + text.width, text.y + text.height);
+
+            case MessageProtocol.ERASER:
+
+                setPaint(Color.WHITE);
+                g2.fillRect(drawing.getX(), drawing.getY(), drawing.getWidth(), drawing.getHeight());
+                break;
+
+            case MessageProtocol.RECTANGLE:
+
+                setPaint(drawing.getColor());
+                g2.drawRect(drawing.getX(), drawing.getY(), drawing.getWidth(), drawing.getHeight());
+                break;
+
+            case MessageProtocol.CIRCLE:
+            case MessageProtocol.OVAL:
+
+                setPaint(drawing.getColor());
+                g2.drawOval(drawing.getX(), drawing.getY(), drawing.getWidth(), drawing.getHeight());
+                break;
+        }
+        return getBounds(drawing.getX(), drawing.getY(), drawing.getX() + drawing.getWidth(),
+                drawing.getY() + drawing.getHeight());
+    }
+
+    /**
+     * Sets the paint of the graphics, unless it is already set to the color
+     * @param color color
+     */
+    public void setPaint(Color color) {
+        if (!color.equals(paint)) {
+            g2.setPaint(color);
+            paint = color;
+        }
+    }
+
+    /**
+     * Returns the area between two corners, widened by the pixels a stroke may reach beyond them
+     * @param x1 x of one corner
+     * @param y1 y of one corner
+     * @param x2 x of the opposite corner
+     * @param y2 y of the opposite corner
+     * @return area
+     */
+    private Rectangle getBounds(int x1, int y1, int x2, int y2) {
+        int left = Math.min(x1, x2) - STROKE_MARGIN;
+        int top = Math.min(y1, y2) - STROKE_MARGIN;
+        int right = Math.max(x1, x2) + STROKE_MARGIN;
+        int bottom = Math.max(y1, y2) + STROKE_MARGIN;
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+}
@@ -1,10 +1,12 @@
 package client;
 import gui.ClientGUI;
+import io.ThreadHandler;
 
 public class Client {
 
     private ClientMessageHandler clientMessageHandler;
     private ClientGUI gui;
+    private ClientOptions options;
     private String username;
     private boolean hasValidPort;
 
@@ -22,7 +24,10 @@ public class Client {
 
     // Error Messages
     private final String REQUIRED_ARGS_ERROR = "Warning: Insufficient arguments entered. \n" +
-            "Usage: java -jar ClientWhiteboard.jar <server-address> <server-port> <username>";
+            "Usage: java -jar ClientWhiteboard.jar <server-address> <server-port> <username> " +
+            "[--threads=platform|virtual] [--board=<id>] [--codec=json|binary] " +
+            "[--compression=none|deflate]";
+    private final String INVALID_OPTION = "Warning: Invalid option entered: ";
     private final String INVALID_PORT_NO = "Warning: Invalid port number entered. Please input a port number between " +
             "1024 and 65335.";
 
@@ -46,6 +51,7 @@ public class Client {
      */
     private void runProgram(String[] args) {
         hasValidPort = false;
+        options = new ClientOptions();
         scanCommandArguments(args);
         if (hasValidPort) {
             System.out.println(APP_RUNNING);
@@ -61,7 +67,14 @@ public class Client {
      */
     private void scanCommandArguments(String[] args) {
         System.out.println(ARG_VERIFY);
-        if (args.length == REQUIRED_ARGS) {
+        if (args.length >= REQUIRED_ARGS) {
+            for (int i = REQUIRED_ARGS; i < args.length; i++) {
+                if (!options.parse(args[i])) {
+                    System.out.println(INVALID_OPTION + args[i]);
+                    System.out.println(REQUIRED_ARGS_ERROR);
+                    exitProgram();
+                }
+            }
             validatePort(Integer.parseInt(args[PORT_NO_INDEX]));
             hostAddress = args[ADDRESS_INDEX];
             username = args[USERNAME_INDEX];
@@ -90,7 +103,8 @@ public class Client {
      * Creates a message handler that handles communication to server
      */
     private void initializeMessageHandler() {
-        this.clientMessageHandler = new ClientMessageHandler(hostAddress, portNo, username, this);
+        this.clientMessageHandler = new ClientMessageHandler(hostAddress, portNo, username, options.getBoardId(),
+                options.getCodec(), options.getCompression(), this, new ThreadHandler().createExecutor(options.getThreadMode()));
     }
 
     /**
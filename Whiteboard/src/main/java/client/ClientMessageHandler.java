@@ -1,23 +1,41 @@
 package client;
+import io.BinaryFrameHandler;
+import io.DeflateCodec;
+import io.FrameHandler;
 import io.ImageHandlerException;
 import io.JSONHandler;
 import io.JSONHandlerException;
+import io.MessageCodec;
 import io.MessageProtocol;
-import java.awt.*;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ClientMessageHandler {
 
     private Client client;
     private Socket socket;
     private String username;
+    private String boardId;     // Null for the server's default board
+    private String codecName;   // Codec requested from the server
+    private String compression; // Compression requested from the server
+    private volatile MessageCodec codec;
+    private boolean isCodecPending;     // Binary codec requested but not yet acknowledged by the server
     private JSONHandler jsonHandler;
     private boolean isConnected;
     private boolean isPermitted;
+    private Executor receiveExecutor;
+    private ReentrantLock sendLock;     // Lock rather than synchronized so virtual threads are not pinned
+
+    // Session Information
+    private String sessionToken;        // Null until the server has accepted the join request
+    private long lastSeq;               // Sequence number of the last drawing applied
+    private volatile boolean hasStateError;     // A state could not be applied, so the next refresh is of the whole board
 
     // Server Information
     private String hostAddress;
@@ -44,22 +62,40 @@ public class ClientMessageHandler {
             "exit.";
     private final String SERVER_CLOSE = "The server is shutting down. All users have been disconnected.";
     private final String CONNECT_FAIL = "Failed to connect to server. The application will now exit, please try again.";
+    private final String RECONNECTING = "Connection to the server has been lost, reconnecting...";
+    private final String RESUMED = "Reconnected to the server, session resumed.";
+
+    // Reconnection
+    private final int RESUME_ATTEMPTS = 5;
+    private final long RESUME_DELAY = 1000;
 
     /**
      * ClientMessageHandler constructor
      * @param hostAddress host address
      * @param portNo port number
      * @param username username
+     * @param boardId id of the board to join, or null for the server's default board
+     * @param codecName codec to request from the server (json or binary)
+     * @param compression compression to request from the server (none or deflate)
      * @param client client
+     * @param receiveExecutor executor that runs the incoming message loop
      */
-    public ClientMessageHandler(String hostAddress, int portNo, String username, Client client) {
+    public ClientMessageHandler(String hostAddress, int portNo, String username, String boardId, String codecName,
+                                String compression, Client client, Executor receiveExecutor) {
         this.hostAddress = hostAddress;
         this.portNo = portNo;
         this.username = username;
+        this.boardId = boardId;
+        this.codecName = codecName;
+        this.compression = compression;
+        this.codec = new FrameHandler();
         this.client = client;
+        this.receiveExecutor = receiveExecutor;
         this.jsonHandler = new JSONHandler();
+        this.sendLock = new ReentrantLock();
         isConnected = false;
         isPermitted = false;
+        lastSeq = -1;
     }
 
     /**
@@ -75,13 +111,13 @@ public class ClientMessageHandler {
         }
 
         // Thread to receive incoming messages from server
-        Thread inputStream = new Thread(() -> {
+        receiveExecutor.execute(() -> {
             while (isConnected) {
                 try {
-                    String input = in.readUTF();
+                    String input = codec.read(in);
                     process(input);
                 } catch (IOException e) {
-                    if (isConnected) {
+                    if (isConnected && !resume()) {
                         // Lost connection to server
                         System.out.println(ERROR_INCOMING);
                         client.getGUI().displayAlert(NO_CONNECTION);
@@ -92,7 +128,6 @@ public class ClientMessageHandler {
                 }
             }
         });
-        inputStream.start();
     }
 
     /**
@@ -118,22 +153,146 @@ public class ClientMessageHandler {
      * @throws JSONHandlerException error parsing JSON string response
      */
     private void requestJoin() throws IOException, JSONHandlerException {
-        String request = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.JOIN, username);
-        sendMessage(request);
-        String response = in.readUTF();
-        process(response);
+        String request;
+        if (boardId == null) {
+            request = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.JOIN, username);
+        } else {
+            request = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.JOIN, username,
+                    MessageProtocol.BOARD, boardId);
+        }
+        sendMessage(requestCodec(request));
+        process(readResponse());
         isPermitted = true;     // Permits user to draw on canvas
     }
 
+    /**
+     * Reconnects to the server after the connection was lost and resumes the session, receiving only the drawings
+     * missed since the last one applied (or a fresh state if the server no longer has them)
+     * @return true if the session was resumed
+     */
+    private boolean resume() {
+        if (sessionToken == null) {
+            return false;
+        }
+        System.out.println(RECONNECTING);
+        for (int attempt = 1; attempt <= RESUME_ATTEMPTS && isConnected; attempt++) {
+            try {
+                Thread.sleep(RESUME_DELAY * attempt);
+                Socket newSocket = new Socket(hostAddress, portNo);
+                sendLock.lock();
+                try {
+                    socket = newSocket;
+                    in = new DataInputStream(socket.getInputStream());
+                    out = new DataOutputStream(socket.getOutputStream());
+                    codec = new FrameHandler();     // A new connection starts with the JSON handshake
+                } finally {
+                    sendLock.unlock();
+                }
+                String request = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.RESUME,
+                        sessionToken, MessageProtocol.SEQ, lastSeq);
+                if (boardId != null) {
+                    request = jsonHandler.addJSONField(request, MessageProtocol.BOARD, boardId);
+                }
+                sendMessage(requestCodec(request));
+                String response = readResponse();
+                if (MessageProtocol.RESUME.equals(jsonHandler.processString(response, MessageProtocol.TYPE))) {
+                    System.out.println(RESUMED);
+                    return true;
+                }
+                // Session has expired on the server
+                return false;
+            } catch (IOException e) {
+                // Server not reachable yet, try again
+            } catch (JSONHandlerException e) {
+                System.out.println(e.getMessage());
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the requested codec and compression to a join or resume request
+     * @param request request
+     * @return request
+     */
+    private String requestCodec(String request) {
+        isCodecPending = false;
+        if (MessageProtocol.CODEC_BINARY.equals(codecName)) {
+            request = jsonHandler.addJSONField(request, MessageProtocol.CODEC, codecName);
+            isCodecPending = true;
+        }
+        if (MessageProtocol.COMPRESSION_DEFLATE.equals(compression)) {
+            request = jsonHandler.addJSONField(request, MessageProtocol.COMPRESSION, compression);
+            isCodecPending = true;
+        }
+        return request;
+    }
+
+    /**
+     * Creates the codec acknowledged by the server
+     * @param ack codec acknowledgement
+     * @return codec
+     * @throws JSONHandlerException error parsing JSON string
+     */
+    private MessageCodec createCodec(String ack) throws JSONHandlerException {
+        MessageCodec negotiated;
+        if (MessageProtocol.CODEC_BINARY.equals(jsonHandler.processString(ack, MessageProtocol.CODEC))) {
+            negotiated = new BinaryFrameHandler();
+        } else {
+            negotiated = new FrameHandler();
+        }
+        if (MessageProtocol.COMPRESSION_DEFLATE.equals(jsonHandler.processString(ack, MessageProtocol.COMPRESSION))) {
+            negotiated = new DeflateCodec(negotiated);
+        }
+        return negotiated;
+    }
+
+    /**
+     * Reads the server's response to a request, answering the heartbeats that may arrive while the request waits
+     * (e.g. for the admin) and switching to the codec the server acknowledges. A server that does not support the
+     * requested codec keeps using JSON.
+     * @return response
+     * @throws IOException incoming message error
+     * @throws JSONHandlerException error parsing JSON string
+     */
+    private String readResponse() throws IOException, JSONHandlerException {
+        while (true) {
+            String response = codec.read(in);
+            String type = jsonHandler.processString(response, MessageProtocol.TYPE);
+            if (type.equals(MessageProtocol.CODEC)) {
+                sendLock.lock();
+                try {
+                    codec = createCodec(response);
+                    isCodecPending = false;
+                } finally {
+                    sendLock.unlock();
+                }
+            } else if (!type.equals(MessageProtocol.PING)) {
+                return response;
+            } else if (!isCodecPending) {
+                // Heartbeats queued before the codec was acknowledged are not answered, the server already reads
+                // the new codec
+                process(response);
+            }
+        }
+    }
+
     /**
      * Send a message to server
      * @param message message
      */
     public void sendMessage(String message) {
+        sendLock.lock();
         try {
-            out.writeUTF(message);
+            codec.write(out, message);
         } catch (IOException e) {
             System.out.println(ERROR_OUTGOING);
+        } finally {
+            sendLock.unlock();
         }
     }
 
@@ -174,6 +333,13 @@ public class ClientMessageHandler {
                 client.exitProgram();
                 break;
 
+            case MessageProtocol.PING:
+
+                // Heartbeat from the server
+                sendMessage(jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.PONG,
+                        MessageProtocol.PONG));
+                break;
+
             case MessageProtocol.USER_LIST:
 
                 // User list changes
@@ -181,76 +347,59 @@ public class ClientMessageHandler {
                 client.getGUI().updateUserList(userList);
                 break;
 
+            case MessageProtocol.STATE_CHUNK:
+
+                // Paint a band of a snapshot as soon as it arrives
+                applyState(input, type);
+                break;
+
             case MessageProtocol.STATE:
 
-                // Apply current state of whiteboard
-                String image = jsonHandler.processString(input, type);
-                try {
-                    client.getGUI().getCanvas().setImage(image);
-                } catch (ImageHandlerException e) {
-                    client.getGUI().displayAlert(ERROR_STATE);
+                // Apply the last band of the board's state, which includes every drawing up to its sequence number
+                applyState(input, type);
+                lastSeq = jsonHandler.processLong(input, MessageProtocol.SEQ, lastSeq);
+                String token = jsonHandler.processString(input, MessageProtocol.TOKEN);
+                if (token != null) {
+                    sessionToken = token;
                 }
                 break;
 
             case MessageProtocol.CANVAS:
 
                 // Update state of canvas
-                String drawingJSON = jsonHandler.processDrawing(input, type);
-                String drawingType = jsonHandler.processString(drawingJSON, MessageProtocol.TYPE);
-                processCanvasUpdate(drawingType, drawingJSON);
+                client.getGUI().getCanvas().updateCanvas(
+                        Collections.singletonList(jsonHandler.processDrawingOp(input, type)));
+                lastSeq = jsonHandler.processLong(input, MessageProtocol.SEQ, lastSeq);
+                break;
+
+            case MessageProtocol.CANVAS_BATCH:
+
+                // Apply a batch of drawings in order
+                client.getGUI().getCanvas().updateCanvas(jsonHandler.processDrawingOpArray(input, type));
+                lastSeq = jsonHandler.processLong(input, MessageProtocol.SEQ, lastSeq);
                 break;
         }
     }
 
     /**
-     * Process and apply new drawings to canvas
-     * @param drawingType type of drawing
-     * @param drawingJSON JSON string containing drawing information
+     * Paints a region of the board's state (or the whole board, from a server that does not send it in chunks)
+     * @param input state or state chunk message
+     * @param type message type
      * @throws JSONHandlerException error parsing JSON string
      */
-    private void processCanvasUpdate(String drawingType, String drawingJSON) throws JSONHandlerException {
-        int x;
-        int y;
-        int width;
-        int height;
-        int colorRGB = jsonHandler.processInt(drawingJSON, MessageProtocol.COLOR);
-        Color color = new Color(colorRGB);
-        switch (drawingType) {
-            case MessageProtocol.LINE:
-
-                int x1 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X1);
-                int y1 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y1);
-                int x2 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X2);
-                int y2 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y2);
-                client.getGUI().getCanvas().updateCanvas(drawingType, x1, y1, x2, y2, color);
-                break;
-
-            case MessageProtocol.TEXT_BOX:
-
-                String text = jsonHandler.processString(drawingJSON, MessageProtocol.TEXT);
-                x = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X);
-                y = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y);
-                client.getGUI().getCanvas().updateCanvas(drawingType, text, x, y, color);
-                break;
-
-            case MessageProtocol.ERASER:
-
-                x = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X);
-                y = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y);
-                width = jsonHandler.processInt(drawingJSON, MessageProtocol.WIDTH);
-                height = jsonHandler.processInt(drawingJSON, MessageProtocol.HEIGHT);
-                client.getGUI().getCanvas().updateCanvas(drawingType, x, y, width, height, Color.WHITE);
-                break;
-
-            default:
-
-                // Rectangle, Circle, Oval shapes
-                x = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X);
-                y = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y);
-                width = jsonHandler.processInt(drawingJSON, MessageProtocol.WIDTH);
-                height = jsonHandler.processInt(drawingJSON, MessageProtocol.HEIGHT);
-                client.getGUI().getCanvas().updateCanvas(drawingType, x, y, width, height, color);
-                break;
+    private void applyState(String input, String type) throws JSONHandlerException {
+        String image = jsonHandler.processString(input, type);
+        if (image.isEmpty()) {
+            // Nothing has changed since the client's state
+            return;
+        }
+        int x = (int) jsonHandler.processLong(input, MessageProtocol.COLUMN, 0);
+        int y = (int) jsonHandler.processLong(input, MessageProtocol.ROW, 0);
+        try {
+            client.getGUI().getCanvas().setImage(image, x, y);
+        } catch (ImageHandlerException e) {
+            hasStateError = true;
+            client.getGUI().displayAlert(ERROR_STATE);
         }
     }
 
@@ -259,6 +408,11 @@ public class ClientMessageHandler {
      */
     public void requestState() {
         String request = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.REFRESH, MessageProtocol.REFRESH);
+        if (!hasStateError && lastSeq >= 0) {
+            // Only the tiles changed since the last drawing applied are needed
+            request = jsonHandler.addJSONField(request, MessageProtocol.SEQ, lastSeq);
+        }
+        hasStateError = false;
         sendMessage(request);
     }
 
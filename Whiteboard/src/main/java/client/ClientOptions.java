@@ -0,0 +1,85 @@
+package client;
+import io.MessageProtocol;
+import io.ThreadHandler;
+
+/**
+ * Optional startup flags given after the client's required arguments, in the form --name=value
+ */
+class ClientOptions {
+
+    // Flags
+    private final String FLAG_THREADS = "--threads=";
+    private final String FLAG_BOARD = "--board=";
+    private final String FLAG_CODEC = "--codec=";
+    private final String FLAG_COMPRESSION = "--compression=";
+
+    private String threadMode;
+    private String boardId;
+    private String codec;
+    private String compression;
+
+    /**
+     * ClientOptions constructor with default settings
+     */
+    ClientOptions() {
+        threadMode = ThreadHandler.PLATFORM;
+        boardId = null;
+        codec = MessageProtocol.CODEC_BINARY;
+        compression = MessageProtocol.COMPRESSION_NONE;
+    }
+
+    /**
+     * Applies a single optional flag
+     * @param arg flag argument
+     * @return true if the flag is recognised and its value is valid
+     */
+    boolean parse(String arg) {
+        if (arg.startsWith(FLAG_THREADS)) {
+            threadMode = arg.substring(FLAG_THREADS.length());
+            return new ThreadHandler().isValidMode(threadMode);
+        } else if (arg.startsWith(FLAG_BOARD)) {
+            boardId = arg.substring(FLAG_BOARD.length());
+            return !boardId.isEmpty();
+        } else if (arg.startsWith(FLAG_CODEC)) {
+            codec = arg.substring(FLAG_CODEC.length());
+            return codec.equals(MessageProtocol.CODEC_JSON) || codec.equals(MessageProtocol.CODEC_BINARY);
+        } else if (arg.startsWith(FLAG_COMPRESSION)) {
+            compression = arg.substring(FLAG_COMPRESSION.length());
+            return compression.equals(MessageProtocol.COMPRESSION_NONE)
+                    || compression.equals(MessageProtocol.COMPRESSION_DEFLATE);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the kind of thread (platform or virtual) that runs the receive loop
+     * @return thread mode
+     */
+    String getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Returns the id of the board to join on the server
+     * @return board id, or null for the server's default board
+     */
+    String getBoardId() {
+        return boardId;
+    }
+
+    /**
+     * Returns the codec (json or binary) to request from the server
+     * @return codec
+     */
+    String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the compression (none or deflate) to request from the server
+     * @return compression
+     */
+    String getCompression() {
+        return compression;
+    }
+}
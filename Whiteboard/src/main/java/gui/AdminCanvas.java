@@ -1,6 +1,6 @@
 package gui;
+import board.Board;
 import io.*;
-import org.json.simple.JSONObject;
 import server.ServerController;
 import javax.swing.*;
 import java.awt.*;
@@ -8,15 +8,16 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 
+/**
+ * View of the server's board that also lets the admin draw on it. The board itself is owned by the server controller.
+ */
 public class AdminCanvas extends JPanel {
 
     private ServerController serverController;
     private JSONHandler jsonHandler;
     private String selectedTool;
-
-    // Canvas Graphic Components
-    private BufferedImage image;
-    private Graphics2D g2;
+    private Board board;
+    private CanvasRepainter repainter;
 
     // Drawing Information
     private int x1;
@@ -37,6 +38,8 @@ public class AdminCanvas extends JPanel {
     public AdminCanvas(int width, int height, ServerController serverController) {
         super();
         this.serverController = serverController;
+        this.board = serverController.getBoard();
+        this.repainter = new CanvasRepainter(this);
         this.jsonHandler = new JSONHandler();
         this.color = Color.BLACK;
         setPreferredSize(new Dimension(width, height));
@@ -66,13 +69,15 @@ public class AdminCanvas extends JPanel {
 
     @Override
     protected void paintComponent(Graphics g) {
-        if (image == null) {
-            image = new BufferedImage(550, 440, BufferedImage.TYPE_INT_RGB);
-            g2 = image.createGraphics();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            clear();
-        }
-        g.drawImage(image,0,0,null);
+        g.drawImage(board.getImage(),0,0,null);
+    }
+
+    /**
+     * Repaints an area of the board changed by a drawing, together with the other areas changed in the same frame
+     * @param area changed area
+     */
+    public void repaintArea(Rectangle area) {
+        repainter.markDirty(area);
     }
 
     /**
@@ -83,7 +88,7 @@ public class AdminCanvas extends JPanel {
         int y = getPosY();
         int width = getShapeWidth();
         int height = getShapeHeight();
-        JSONObject drawingJSON = null;
+        String drawingJSON = null;
         String update;
         switch (selectedTool) {
             case TOOL_RECTANGLE:
@@ -135,85 +140,27 @@ public class AdminCanvas extends JPanel {
             default:
                 break;
         }
-        update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.CANVAS, drawingJSON);
-        serverController.updateServer(update);
+        update = jsonHandler.createJSONMessage(MessageProtocol.TYPE, MessageProtocol.CANVAS, drawingJSON);
+        serverController.updateCanvas(update);
     }
 
     /**
-     * Draws shapes received from the server controller
-     * @param drawingType type of drawing
-     * @param x x
-     * @param y y
-     * @param width width
-     * @param height height
-     * @param color color
-     */
-    public void updateCanvas(String drawingType, int x, int y, int width, int height, Color color) {
-        g2.setPaint(color);
-        switch (drawingType) {
-            case MessageProtocol.RECTANGLE:
-
-                g2.drawRect(x, y, width, height);
-                break;
-
-            case MessageProtocol.CIRCLE:
-            case MessageProtocol.OVAL:
-
-                g2.drawOval(x, y, width, height);
-                break;
-
-            case MessageProtocol.LINE:
-
-                g2.drawLine(x, y, width, height);
-                break;
-
-            case MessageProtocol.ERASER:
-
-                g2.fillRect(x, y, width, height);
-                break;
-        }
-        g2.setPaint(this.color);
-        repaint();
-    }
-
-    /**
-     * Draws text received from the server
-     * @param drawingType type of drawing
-     * @param text text
-     * @param x x
-     * @param y y
-     * @param color color
-     */
-    public void updateCanvas(String drawingType, String text, int x, int y, Color color) {
-        if (drawingType.equals(MessageProtocol.TEXT_BOX)) {
-            g2.setPaint(color);
-            g2.drawString(text, x, y);
-            g2.setPaint(this.color);
-            repaint();
-        }
-    }
-
-    /**
-     * Clears the canvas
+     * Clears the canvas for every user
      */
     void clear() {
-        g2.setPaint(Color.white);
-        g2.fillRect(0,0, getSize().width, getSize().height);
-        g2.setPaint(Color.black);
-        repaint();
+        serverController.clearBoard();
     }
 
     /**
-     * Loads previous saved canvas
+     * Loads previous saved canvas for every user
      * @param newImage opened image
+     * @throws InvalidFormatException file is not an image
      */
     void loadImage(BufferedImage newImage) throws InvalidFormatException {
-         try{
-             image.getGraphics().drawImage(newImage,0,0,newImage.getWidth(),newImage.getHeight(),null);
-         } catch (Exception e) {
-             throw new InvalidFormatException();
-         }
-        repaint();
+        if (newImage == null) {
+            throw new InvalidFormatException();
+        }
+        serverController.openBoard(newImage);
     }
 
     /**
@@ -306,10 +253,10 @@ public class AdminCanvas extends JPanel {
     }
 
     /**
-     * Returns the canvas image
+     * Returns a copy of the canvas image
      * @return image
      */
     public BufferedImage getImage() {
-        return image;
+        return board.copyImage();
     }
 }
\ No newline at end of file
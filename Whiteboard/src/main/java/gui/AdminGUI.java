@@ -11,6 +11,7 @@ import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.regex.PatternSyntaxException;
 
 public class AdminGUI {
 
@@ -21,12 +22,18 @@ public class AdminGUI {
     private DefaultListModel<String> listModel;
     private JList<String> list;
     private AdminCanvas canvas;
-
+    private JMenu menuJoinRequests;
 
     // Alert Messages
-    private final String JOIN_REQUEST = "A new user (%s) is requesting to join this session, do you wish to allow " +
-            "this?";
-    private final String INCOMING_USER = "New User Request";
+    private final String JOIN_REQUESTS = "Join Requests (%d)";
+    private final String REVIEW_TITLE = "Review Join Requests";
+    private final String REVIEW_PROMPT = "Select the users to approve or reject:";
+    private final String PATTERN_PROMPT = "Approve usernames matching (regular expression):";
+    private final String NO_REQUESTS = "There are no join requests waiting.";
+    private final String INVALID_PATTERN = "Invalid pattern, please enter a valid regular expression!";
+    private final String APPROVE = "Approve";
+    private final String REJECT = "Reject";
+    private final String CANCEL = "Cancel";
     private final String INPUT_PROMPT = "Enter your text";
     private final String EMPTY_TEXT = "Do not leave it empty!";
     private final String NO_SELECTION = "No user is selected, please select a user!";
@@ -305,7 +312,6 @@ public class AdminGUI {
                         // Incorrect file format
                         displayAlert(ERROR_FORMAT);
                     }
-                    serverController.refreshState();
                 }
             }
         });
@@ -330,6 +336,54 @@ public class AdminGUI {
         });
         menuFile.add(menuFileSave);
 
+        // Menu Bar -> Join Requests
+        menuJoinRequests = new JMenu(String.format(JOIN_REQUESTS, 0));
+        menuBar.add(menuJoinRequests);
+
+        // Menu Bar -> Join Requests -> Review
+        JMenuItem menuJoinReview = new JMenuItem("Review...");
+        menuJoinReview.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                reviewJoinRequests();
+            }
+        });
+        menuJoinRequests.add(menuJoinReview);
+
+        // Menu Bar -> Join Requests -> Approve All
+        JMenuItem menuJoinApproveAll = new JMenuItem("Approve All");
+        menuJoinApproveAll.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                serverController.approveAllJoinRequests();
+            }
+        });
+        menuJoinRequests.add(menuJoinApproveAll);
+
+        // Menu Bar -> Join Requests -> Approve Matching
+        JMenuItem menuJoinApproveMatching = new JMenuItem("Approve Matching...");
+        menuJoinApproveMatching.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String regex = JOptionPane.showInputDialog(frame, PATTERN_PROMPT, null);
+                if (regex != null) {
+                    // User clicked 'OK'
+                    try {
+                        serverController.approveMatchingJoinRequests(regex);
+                    } catch (PatternSyntaxException ex) {
+                        displayAlert(INVALID_PATTERN);
+                    }
+                }
+            }
+        });
+        menuJoinRequests.add(menuJoinApproveMatching);
+
+        // Menu Bar -> Join Requests -> Reject All
+        JMenuItem menuJoinRejectAll = new JMenuItem("Reject All");
+        menuJoinRejectAll.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                serverController.rejectAllJoinRequests();
+            }
+        });
+        menuJoinRequests.add(menuJoinRejectAll);
+
         // Menu Bar -> Settings
         JMenu menuSettings = new JMenu("Settings");
         menuBar.add(menuSettings);
@@ -344,7 +398,6 @@ public class AdminGUI {
                         JOptionPane.QUESTION_MESSAGE);
                 if (choice == JOptionPane.YES_NO_OPTION) {
                     canvas.clear();
-                    serverController.refreshState();
                 }
             }
         });
@@ -396,13 +449,35 @@ public class AdminGUI {
     }
 
     /**
-     * Displays a join request of a new user and returns true if admin accepts
-     * @param username username
-     * @return boolean
+     * Updates the number of waiting join requests shown in the menu bar
      */
-    public boolean displayJoinRequest(String username) {
-        return JOptionPane.showConfirmDialog(frame, String.format(JOIN_REQUEST,
-                username), INCOMING_USER, JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION;
+    public void updateJoinRequests() {
+        int count = serverController.getJoinRequests().size();
+        SwingUtilities.invokeLater(() -> menuJoinRequests.setText(String.format(JOIN_REQUESTS, count)));
+    }
+
+    /**
+     * Lists the waiting join requests so the admin can approve or reject a selection of them
+     */
+    private void reviewJoinRequests() {
+        ArrayList<String> requests = serverController.getJoinRequests();
+        if (requests.isEmpty()) {
+            displayAlert(NO_REQUESTS);
+            return;
+        }
+        JList<String> requestList = new JList<>(requests.toArray(new String[0]));
+        requestList.setSelectionInterval(0, requests.size() - 1);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(new JLabel(REVIEW_PROMPT), BorderLayout.NORTH);
+        panel.add(new JScrollPane(requestList), BorderLayout.CENTER);
+        String[] options = {APPROVE, REJECT, CANCEL};
+        int choice = JOptionPane.showOptionDialog(frame, panel, REVIEW_TITLE, JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice == 0) {
+            serverController.approveJoinRequests(requestList.getSelectedValuesList());
+        } else if (choice == 1) {
+            serverController.rejectJoinRequests(requestList.getSelectedValuesList());
+        }
     }
 
     /**
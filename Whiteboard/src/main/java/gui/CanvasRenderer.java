@@ -0,0 +1,150 @@
+package gui;
+import board.DrawingRenderer;
+import io.DrawingOp;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Render thread of the client's canvas. Updates received from the server are handed over through a lock-free queue
+ * and drawn onto a back buffer on this thread, so the thread reading from the network never waits for them to be
+ * rasterized. Once the queue is empty, or a frame is due, the area changed since the last frame is copied to the
+ * front buffer and repainted. The event dispatch thread only paints the front buffer, so it always shows complete
+ * frames.
+ */
+class CanvasRenderer implements Runnable {
+
+    private BufferedImage back;     // Only drawn on by the render thread
+    private Graphics2D g2;
+    private DrawingRenderer renderer;
+    private BufferedImage front;    // Last complete frame, guarded by its own lock
+    private Graphics2D frontGraphics;
+    private CanvasRepainter repainter;
+    private ConcurrentLinkedQueue<Supplier<Rectangle>> updates;     // Each returns the area it changed
+    private Thread thread;
+
+    // Nanoseconds of updates applied before the changed area is shown, even if more are queued
+    private final long FRAME_INTERVAL = 16_000_000;
+
+    /**
+     * CanvasRenderer constructor, with both buffers blank
+     * @param width width
+     * @param height height
+     * @param repainter repaints the canvas once a frame has been copied to the front buffer
+     */
+    CanvasRenderer(int width, int height, CanvasRepainter repainter) {
+        this.back = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.g2 = back.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        this.renderer = new DrawingRenderer(g2);
+        renderer.setPaint(Color.white);
+        g2.fillRect(0, 0, width, height);
+        this.front = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.frontGraphics = front.createGraphics();
+        frontGraphics.drawImage(back, 0, 0, null);
+        this.repainter = repainter;
+        this.updates = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Starts the render thread
+     */
+    void start() {
+        thread = new Thread(this, "canvas-renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues drawings to be drawn in order (any thread)
+     * @param drawings drawings
+     */
+    void draw(List<DrawingOp> drawings) {
+        submit(() -> renderer.draw(drawings));
+    }
+
+    /**
+     * Queues an image to be drawn over a region of the canvas (any thread)
+     * @param image image
+     * @param x x the image starts at
+     * @param y y the image starts at
+     */
+    void drawImage(BufferedImage image, int x, int y) {
+        submit(() -> {
+            g2.drawImage(image, x, y, image.getWidth(), image.getHeight(), null);
+            return new Rectangle(x, y, image.getWidth(), image.getHeight());
+        });
+    }
+
+    /**
+     * Paints the last complete frame (event dispatch thread)
+     * @param g graphics of the canvas
+     */
+    void paint(Graphics g) {
+        synchronized (front) {
+            g.drawImage(front, 0, 0, null);
+        }
+    }
+
+    /**
+     * Applies queued updates to the back buffer and shows them, waiting for more once the queue is empty
+     */
+    public void run() {
+        Rectangle dirty = null;     // Area changed since the last frame
+        long lastFrame = System.nanoTime();
+        while (true) {
+            Supplier<Rectangle> update = updates.poll();
+            if (update != null) {
+                Rectangle changed = update.get();
+                if (changed != null) {
+                    if (dirty == null) {
+                        dirty = changed;
+                    } else {
+                        dirty.add(changed);
+                    }
+                }
+                if (System.nanoTime() - lastFrame < FRAME_INTERVAL) {
+                    // Keep applying a burst of updates until a frame is due
+                    continue;
+                }
+            }
+            if (dirty != null) {
+                present(dirty);
+                dirty = null;
+                lastFrame = System.nanoTime();
+            }
+            if (update == null) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Queues an update and wakes the render thread
+     * @param update draws onto the back buffer and returns the area it changed
+     */
+    private void submit(Supplier<Rectangle> update) {
+        updates.offer(update);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Copies an area of the back buffer to the front buffer and repaints it on the canvas
+     * @param area changed area
+     */
+    private void present(Rectangle area) {
+        Rectangle visible = area.intersection(new Rectangle(0, 0, back.getWidth(), back.getHeight()));
+        if (visible.isEmpty()) {
+            return;
+        }
+        synchronized (front) {
+            frontGraphics.drawImage(back, visible.x, visible.y, visible.x + visible.width,
+                    visible.y + visible.height, visible.x, visible.y, visible.x + visible.width,
+                    visible.y + visible.height, null);
+        }
+        repainter.markDirty(visible);
+    }
+}
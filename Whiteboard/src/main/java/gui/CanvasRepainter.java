@@ -0,0 +1,57 @@
+package gui;
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Collects the areas of a canvas changed by drawings and repaints their union at most once per display frame, so a
+ * burst of drawings repaints only the pixels it changed instead of the whole canvas for every drawing.
+ */
+class CanvasRepainter {
+
+    private JComponent canvas;
+    private Rectangle dirty;        // Union of the areas changed since the last repaint, null if there are none
+    private Timer timer;
+
+    // Milliseconds between repaints, about 60 frames per second
+    private final int FRAME_INTERVAL = 16;
+
+    /**
+     * CanvasRepainter constructor
+     * @param canvas canvas to repaint
+     */
+    CanvasRepainter(JComponent canvas) {
+        this.canvas = canvas;
+        this.timer = new Timer(FRAME_INTERVAL, e -> repaintDirty());
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Marks an area of the canvas as changed, to be repainted at the end of the current frame (any thread)
+     * @param area changed area
+     */
+    void markDirty(Rectangle area) {
+        synchronized (this) {
+            if (dirty != null) {
+                // A repaint is already due this frame
+                dirty.add(area);
+                return;
+            }
+            dirty = new Rectangle(area);
+        }
+        timer.restart();
+    }
+
+    /**
+     * Repaints the areas changed during the frame (event dispatch thread)
+     */
+    private void repaintDirty() {
+        Rectangle area;
+        synchronized (this) {
+            area = dirty;
+            dirty = null;
+        }
+        if (area != null) {
+            canvas.repaint(area);
+        }
+    }
+}
@@ -1,15 +1,16 @@
 package gui;
 import client.ClientMessageHandler;
+import io.DrawingOp;
 import io.ImageHandler;
 import io.ImageHandlerException;
 import io.JSONHandler;
 import io.MessageProtocol;
-import org.json.simple.JSONObject;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 public class ClientCanvas extends JPanel {
 
@@ -18,8 +19,7 @@ public class ClientCanvas extends JPanel {
     private String selectedTool;
 
     // Canvas Graphic Components
-    private BufferedImage image;
-    private Graphics2D g2;
+    private CanvasRenderer renderer;
 
     // Drawing Information
     private int x1;
@@ -41,6 +41,8 @@ public class ClientCanvas extends JPanel {
         this.clientMessageHandler = clientMessageHandler;
         this.jsonHandler = new JSONHandler();
         this.color = Color.BLACK;
+        this.renderer = new CanvasRenderer(width, height, new CanvasRepainter(this));
+        renderer.start();
         setPreferredSize(new Dimension(width, height));
         setOpaque(true);
         setBackground(Color.WHITE);
@@ -68,13 +70,7 @@ public class ClientCanvas extends JPanel {
 
     @Override
     protected void paintComponent(Graphics g) {
-        if (image == null) {
-            image = new BufferedImage(550, 440, BufferedImage.TYPE_INT_RGB);
-            g2 = image.createGraphics();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            clear();
-        }
-        g.drawImage(image,0,0,null);
+        renderer.paint(g);
     }
 
     /**
@@ -85,7 +81,7 @@ public class ClientCanvas extends JPanel {
         int y = getPosY();
         int width = getShapeWidth();
         int height = getShapeHeight();
-        JSONObject drawingJSON = null;
+        String drawingJSON = null;
         String update;
         switch (selectedTool) {
             case TOOL_RECTANGLE:
@@ -130,85 +126,32 @@ public class ClientCanvas extends JPanel {
             default:
                 break;
         }
-        update = jsonHandler.createJSONString(MessageProtocol.TYPE,
+        update = jsonHandler.createJSONMessage(MessageProtocol.TYPE,
                 MessageProtocol.CANVAS, drawingJSON);
         clientMessageHandler.sendMessage(update);
     }
 
     /**
-     * Draws shapes received from the server
-     * @param drawingType type of drawing
-     * @param x x
-     * @param y y
-     * @param width width
-     * @param height height
-     * @param color color
-     */
-    public void updateCanvas(String drawingType, int x, int y, int width, int height, Color color) {
-        g2.setPaint(color);
-        switch (drawingType) {
-            case MessageProtocol.RECTANGLE:
-
-                g2.drawRect(x, y, width, height);
-                break;
-
-            case MessageProtocol.CIRCLE:
-            case MessageProtocol.OVAL:
-
-                g2.drawOval(x, y, width, height);
-                break;
-
-            case MessageProtocol.LINE:
-
-                g2.drawLine(x, y, width, height);
-                break;
-
-            case MessageProtocol.ERASER:
-
-                g2.fillRect(x, y, width, height);
-                break;
-        }
-        g2.setPaint(this.color);
-        repaint();
-    }
-
-    /**
-     * Draws text received from the server
-     * @param drawingType type of drawing
-     * @param text text
-     * @param x x
-     * @param y y
-     * @param color color
-     */
-    public void updateCanvas(String drawingType, String text, int x, int y, Color color) {
-        if (drawingType.equals(MessageProtocol.TEXT_BOX)) {
-            g2.setPaint(color);
-            g2.drawString(text, x, y);
-            g2.setPaint(this.color);
-            repaint();
-        }
-    }
-
-    /**
-     * Clears the canvas
+     * Queues drawings received from the server to be drawn in order on the render thread, which repaints the area
+     * they changed at the next frame
+     * @param drawings drawings
      */
-    private void clear() {
-        g2.setPaint(Color.white);
-        g2.fillRect(0,0, getSize().width, getSize().height);
-        g2.setPaint(Color.black);
-        repaint();
+    public void updateCanvas(List<DrawingOp> drawings) {
+        renderer.draw(drawings);
     }
 
     /**
-     * Applies the state of the session's canvas locally
+     * Applies the state of the session's canvas locally, or a region of it. The image is decoded on the calling
+     * thread, so an invalid state is reported to it, and drawn on the render thread after the updates queued before it.
      * @param imageString string containing the encoded image
+     * @param x x the image starts at
+     * @param y y the image starts at
      * @throws ImageHandlerException error decoding the image string
      */
-    public void setImage(String imageString) throws ImageHandlerException {
+    public void setImage(String imageString, int x, int y) throws ImageHandlerException {
         ImageHandler imageHandler = new ImageHandler();
         BufferedImage updatedImage =  imageHandler.convertImageString(imageString);
-        image.getGraphics().drawImage(updatedImage,0,0,updatedImage.getWidth(),updatedImage.getHeight(),null);
-        repaint();
+        renderer.drawImage(updatedImage, x, y);
     }
 
     /**
@@ -0,0 +1,559 @@
+package io;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+
+/**
+ * Compact binary codec, negotiated in the join handshake. Every frame is a 4 byte length followed by a message type
+ * byte and the message's fields: coordinates and colours as 4 byte ints, drawing types as a byte, strings and arrays
+ * prefixed with a varint length, and states as raw PNG bytes instead of Base64 text. Frames are not limited to 64 KB.
+ */
+public class BinaryFrameHandler implements MessageCodec {
+
+    public final static int LENGTH_BYTES = 4;
+    public final static int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Message Types
+    private final static String[] MESSAGE_TYPES = {
+            MessageProtocol.JOIN, MessageProtocol.REJECT, MessageProtocol.INVALID, MessageProtocol.STATE,
+            MessageProtocol.CANVAS, MessageProtocol.CANVAS_BATCH, MessageProtocol.REFRESH, MessageProtocol.USER_LIST,
+            MessageProtocol.DISCONNECT, MessageProtocol.SHUT_DOWN, MessageProtocol.RESUME, MessageProtocol.CODEC,
+            MessageProtocol.PING, MessageProtocol.PONG, MessageProtocol.STATE_CHUNK
+    };
+
+    // Drawing Types
+    private final static String[] DRAWING_TYPES = {
+            MessageProtocol.RECTANGLE, MessageProtocol.CIRCLE, MessageProtocol.OVAL, MessageProtocol.LINE,
+            MessageProtocol.TEXT_BOX, MessageProtocol.ERASER
+    };
+
+    // Error Messages
+    private final String ERROR_FRAME_LENGTH = "Frame length is out of range: ";
+    private final String ERROR_MESSAGE = "Unable to encode message in binary: ";
+    private final String ERROR_TYPE = "Unknown binary type: ";
+
+    /**
+     * BinaryFrameHandler default constructor
+     */
+    public BinaryFrameHandler() {}
+
+    /**
+     * Returns the number of bytes of the length prefix at the start of every frame
+     * @return header length
+     */
+    public int headerLength() {
+        return LENGTH_BYTES;
+    }
+
+    /**
+     * Returns the length of a frame (including its length prefix) from its header
+     * @param buffer buffer holding at least the frame's header
+     * @param offset offset of the frame within the buffer
+     * @return frame length
+     * @throws IOException frame is longer than allowed
+     */
+    public int frameLength(byte[] buffer, int offset) throws IOException {
+        int length = ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+        checkLength(length);
+        return LENGTH_BYTES + length;
+    }
+
+    /**
+     * Encodes a message into a length-prefixed frame
+     * @param message JSON string of the message
+     * @return frame bytes
+     * @throws IOException message cannot be encoded
+     */
+    public byte[] encodeFrame(String message) throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream(message.length() / 2 + LENGTH_BYTES);
+        DataOutputStream out = new DataOutputStream(b);
+        out.writeInt(0);
+        try {
+            encodeMessage(JSONReader.of(message), out);
+        } catch (JSONHandlerException e) {
+            throw new IOException(ERROR_MESSAGE + e.getMessage());
+        }
+        byte[] frame = b.toByteArray();
+        int length = frame.length - LENGTH_BYTES;
+        checkLength(length);
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * Decodes a complete frame (including its length prefix) back into a message
+     * @param frame frame bytes
+     * @param offset offset of the frame within the array
+     * @param length length of the frame including its length prefix
+     * @return JSON string of the message
+     * @throws IOException malformed frame
+     */
+    public String decodeFrame(byte[] frame, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, offset + LENGTH_BYTES,
+                length - LENGTH_BYTES));
+        return decodeMessage(in);
+    }
+
+    /**
+     * Reads the next frame and decodes it into a message
+     * @param in stream
+     * @return JSON string of the message
+     * @throws IOException unable to read or decode the frame
+     */
+    public String read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return decodeMessage(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    /**
+     * Writes a message's type byte and fields
+     * @param message reader positioned at the message
+     * @param out stream
+     * @throws IOException message cannot be encoded
+     * @throws JSONHandlerException malformed message
+     */
+    private void encodeMessage(JSONReader message, DataOutputStream out) throws IOException, JSONHandlerException {
+        String type = getString(message, MessageProtocol.TYPE);
+        out.writeByte(typeCode(MESSAGE_TYPES, type));
+        switch (type) {
+
+            case MessageProtocol.JOIN:
+
+                writeString(out, getString(message, type));
+                writeString(out, getString(message, MessageProtocol.BOARD));
+                writeString(out, getString(message, MessageProtocol.CODEC));
+                break;
+
+            case MessageProtocol.RESUME:
+
+                writeString(out, getString(message, type));
+                writeSeq(out, message);
+                writeString(out, getString(message, MessageProtocol.BOARD));
+                writeString(out, getString(message, MessageProtocol.CODEC));
+                break;
+
+            case MessageProtocol.CODEC:
+
+                writeString(out, getString(message, type));
+                break;
+
+            case MessageProtocol.STATE:
+            case MessageProtocol.STATE_CHUNK:
+
+                byte[] image = Base64.getDecoder().decode(getString(message, type));
+                writeVarLong(out, image.length);
+                out.write(image);
+                writeVarLong(out, getLong(message, MessageProtocol.ROW, 0));
+                writeVarLong(out, getLong(message, MessageProtocol.COLUMN, 0));
+                if (type.equals(MessageProtocol.STATE)) {
+                    writeSeq(out, message);
+                    writeString(out, getString(message, MessageProtocol.TOKEN));
+                }
+                break;
+
+            case MessageProtocol.CANVAS:
+
+                if (!message.find(type)) {
+                    throw new IOException(ERROR_MESSAGE + type);
+                }
+                encodeDrawing(message, out);
+                writeSeq(out, message);
+                break;
+
+            case MessageProtocol.CANVAS_BATCH:
+
+                // The drawings are counted before they are written
+                ByteArrayOutputStream b = new ByteArrayOutputStream();
+                DataOutputStream drawings = new DataOutputStream(b);
+                int count = 0;
+                if (message.find(type)) {
+                    message.beginArray();
+                    while (message.nextElement()) {
+                        encodeDrawing(message, drawings);
+                        count++;
+                    }
+                }
+                writeVarLong(out, count);
+                b.writeTo(out);
+                writeSeq(out, message);
+                break;
+
+            case MessageProtocol.USER_LIST:
+
+                ArrayList<String> usernames = new ArrayList<>();
+                if (message.find(type)) {
+                    message.beginArray();
+                    while (message.nextElement()) {
+                        usernames.add(message.readString());
+                    }
+                }
+                writeVarLong(out, usernames.size());
+                for (String username : usernames) {
+                    writeString(out, username);
+                }
+                break;
+
+            default:
+
+                // Reject, Invalid, Refresh, Disconnect, Shut Down, Ping, Pong carry no fields
+                break;
+        }
+    }
+
+    /**
+     * Reads a message's type byte and fields
+     * @param in stream
+     * @return JSON string of the message
+     * @throws IOException malformed message
+     */
+    private String decodeMessage(DataInputStream in) throws IOException {
+        String type = typeName(MESSAGE_TYPES, in.readUnsignedByte());
+        JSONWriter message = JSONWriter.begin().put(MessageProtocol.TYPE, type);
+        switch (type) {
+
+            case MessageProtocol.JOIN:
+
+                message.put(type, readString(in));
+                putIfPresent(message, MessageProtocol.BOARD, readString(in));
+                putIfPresent(message, MessageProtocol.CODEC, readString(in));
+                break;
+
+            case MessageProtocol.RESUME:
+
+                message.put(type, readString(in));
+                readSeq(in, message);
+                putIfPresent(message, MessageProtocol.BOARD, readString(in));
+                putIfPresent(message, MessageProtocol.CODEC, readString(in));
+                break;
+
+            case MessageProtocol.CODEC:
+
+                message.put(type, readString(in));
+                break;
+
+            case MessageProtocol.STATE:
+            case MessageProtocol.STATE_CHUNK:
+
+                byte[] image = new byte[readLength(in)];
+                in.readFully(image);
+                message.put(type, Base64.getEncoder().encodeToString(image));
+                message.put(MessageProtocol.ROW, readVarLong(in));
+                message.put(MessageProtocol.COLUMN, readVarLong(in));
+                if (type.equals(MessageProtocol.STATE)) {
+                    readSeq(in, message);
+                    putIfPresent(message, MessageProtocol.TOKEN, readString(in));
+                }
+                break;
+
+            case MessageProtocol.CANVAS:
+
+                message.beginObject(type);
+                decodeDrawing(in, message);
+                message.endObject();
+                readSeq(in, message);
+                break;
+
+            case MessageProtocol.CANVAS_BATCH:
+
+                message.beginArray(type);
+                for (int i = readLength(in); i > 0; i--) {
+                    message.beginObject();
+                    decodeDrawing(in, message);
+                    message.endObject();
+                }
+                message.endArray();
+                readSeq(in, message);
+                break;
+
+            case MessageProtocol.USER_LIST:
+
+                message.beginArray(type);
+                for (int i = readLength(in); i > 0; i--) {
+                    message.element(readString(in));
+                }
+                message.endArray();
+                break;
+
+            default:
+
+                message.put(type, type);
+                break;
+        }
+        return message.end();
+    }
+
+    /**
+     * Writes a drawing's type byte and fields
+     * @param drawing reader positioned at the drawing, left after it
+     * @param out stream
+     * @throws IOException drawing cannot be encoded
+     * @throws JSONHandlerException malformed drawing
+     */
+    private void encodeDrawing(JSONReader drawing, DataOutputStream out) throws IOException, JSONHandlerException {
+        drawing.enter();
+        String drawingType = getString(drawing, MessageProtocol.TYPE);
+        out.writeByte(typeCode(DRAWING_TYPES, drawingType));
+        switch (drawingType) {
+            case MessageProtocol.LINE:
+
+                writeInt(out, drawing, MessageProtocol.POS_X1);
+                writeInt(out, drawing, MessageProtocol.POS_Y1);
+                writeInt(out, drawing, MessageProtocol.POS_X2);
+                writeInt(out, drawing, MessageProtocol.POS_Y2);
+                break;
+
+            case MessageProtocol.TEXT_BOX:
+
+                writeInt(out, drawing, MessageProtocol.POS_X);
+                writeInt(out, drawing, MessageProtocol.POS_Y);
+                writeString(out, getString(drawing, MessageProtocol.TEXT));
+                break;
+
+            default:
+
+                // Rectangle, Circle, Oval, Eraser
+                writeInt(out, drawing, MessageProtocol.POS_X);
+                writeInt(out, drawing, MessageProtocol.POS_Y);
+                writeInt(out, drawing, MessageProtocol.WIDTH);
+                writeInt(out, drawing, MessageProtocol.HEIGHT);
+                break;
+        }
+        writeInt(out, drawing, MessageProtocol.COLOR);
+        drawing.exit();
+    }
+
+    /**
+     * Reads a drawing's type byte and fields
+     * @param in stream
+     * @param drawing writer the drawing's fields are added to
+     * @throws IOException malformed drawing
+     */
+    private void decodeDrawing(DataInputStream in, JSONWriter drawing) throws IOException {
+        String drawingType = typeName(DRAWING_TYPES, in.readUnsignedByte());
+        drawing.put(MessageProtocol.TYPE, drawingType);
+        switch (drawingType) {
+            case MessageProtocol.LINE:
+
+                drawing.put(MessageProtocol.POS_X1, in.readInt());
+                drawing.put(MessageProtocol.POS_Y1, in.readInt());
+                drawing.put(MessageProtocol.POS_X2, in.readInt());
+                drawing.put(MessageProtocol.POS_Y2, in.readInt());
+                break;
+
+            case MessageProtocol.TEXT_BOX:
+
+                drawing.put(MessageProtocol.POS_X, in.readInt());
+                drawing.put(MessageProtocol.POS_Y, in.readInt());
+                drawing.put(MessageProtocol.TEXT, readString(in));
+                break;
+
+            default:
+
+                // Rectangle, Circle, Oval, Eraser
+                drawing.put(MessageProtocol.POS_X, in.readInt());
+                drawing.put(MessageProtocol.POS_Y, in.readInt());
+                drawing.put(MessageProtocol.WIDTH, in.readInt());
+                drawing.put(MessageProtocol.HEIGHT, in.readInt());
+                break;
+        }
+        drawing.put(MessageProtocol.COLOR, in.readInt());
+    }
+
+    /**
+     * Returns a string field of a message or drawing
+     * @param message reader of the message or drawing
+     * @param key key
+     * @return value, or null if the field is absent
+     * @throws JSONHandlerException the value is not a string
+     */
+    private String getString(JSONReader message, String key) throws JSONHandlerException {
+        return message.find(key) ? message.readKnownString() : null;
+    }
+
+    /**
+     * Returns an integer field of a message
+     * @param message reader of the message
+     * @param key key
+     * @param defaultValue value returned if the field is absent
+     * @return value
+     * @throws JSONHandlerException the value is not an integer
+     */
+    private long getLong(JSONReader message, String key, long defaultValue) throws JSONHandlerException {
+        return message.find(key) && !message.isNull() ? message.readLong() : defaultValue;
+    }
+
+    /**
+     * Writes an int field of a drawing as 4 bytes
+     * @param out stream
+     * @param drawing reader of the drawing
+     * @param key key
+     * @throws IOException field is missing or not a number
+     */
+    private void writeInt(DataOutputStream out, JSONReader drawing, String key) throws IOException {
+        try {
+            if (!drawing.find(key)) {
+                throw new IOException(ERROR_MESSAGE + key);
+            }
+            out.writeInt((int) drawing.readLong());
+        } catch (JSONHandlerException e) {
+            throw new IOException(ERROR_MESSAGE + key);
+        }
+    }
+
+    /**
+     * Writes a message's optional sequence number as a varint, 0 if it has none
+     * @param out stream
+     * @param message reader of the message
+     * @throws IOException unable to write
+     * @throws JSONHandlerException the sequence number is not an integer
+     */
+    private void writeSeq(DataOutputStream out, JSONReader message) throws IOException, JSONHandlerException {
+        writeVarLong(out, getLong(message, MessageProtocol.SEQ, -1) + 1);
+    }
+
+    /**
+     * Reads a message's optional sequence number
+     * @param in stream
+     * @param message writer to add it to
+     * @throws IOException unable to read
+     */
+    private void readSeq(DataInputStream in, JSONWriter message) throws IOException {
+        long seq = readVarLong(in);
+        if (seq > 0) {
+            message.put(MessageProtocol.SEQ, seq - 1);
+        }
+    }
+
+    /**
+     * Writes an optional UTF-8 string prefixed with its varint length (an absent string is written as empty)
+     * @param out stream
+     * @param value string, or null
+     * @throws IOException unable to write
+     */
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a UTF-8 string prefixed with its varint length
+     * @param in stream
+     * @return string, empty if it was absent
+     * @throws IOException unable to read
+     */
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a non-negative number as a varint (7 bits per byte, high bit set on every byte but the last)
+     * @param out stream
+     * @param value value
+     * @throws IOException unable to write
+     */
+    private void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a varint
+     * @param in stream
+     * @return value
+     * @throws IOException unable to read, or the varint is too long
+     */
+    private long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException(ERROR_FRAME_LENGTH + value);
+    }
+
+    /**
+     * Reads a varint length, which cannot exceed the largest frame
+     * @param in stream
+     * @return length
+     * @throws IOException unable to read, or the length is out of range
+     */
+    private int readLength(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        checkLength(length);
+        return (int) length;
+    }
+
+    /**
+     * Checks that a length fits in a frame
+     * @param length length
+     * @throws IOException length is out of range
+     */
+    private void checkLength(long length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException(ERROR_FRAME_LENGTH + length);
+        }
+    }
+
+    /**
+     * Adds an optional string to a decoded message, unless it was absent
+     * @param message message
+     * @param key key
+     * @param value value, empty if absent
+     */
+    private void putIfPresent(JSONWriter message, String key, String value) {
+        if (!value.isEmpty()) {
+            message.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the byte code of a message or drawing type
+     * @param types known types, in code order
+     * @param type type
+     * @return code
+     * @throws IOException unknown type
+     */
+    private int typeCode(String[] types, String type) throws IOException {
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].equals(type)) {
+                return i + 1;
+            }
+        }
+        throw new IOException(ERROR_TYPE + type);
+    }
+
+    /**
+     * Returns the message or drawing type of a byte code
+     * @param types known types, in code order
+     * @param code code
+     * @return type
+     * @throws IOException unknown code
+     */
+    private String typeName(String[] types, int code) throws IOException {
+        if (code < 1 || code > types.length) {
+            throw new IOException(ERROR_TYPE + code);
+        }
+        return types[code - 1];
+    }
+}
@@ -0,0 +1,266 @@
+package io;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the frames of another codec, negotiated in the join handshake. Each connection direction is a single
+ * deflate stream that is flushed after every message, so later messages are compressed against earlier ones, and the
+ * stream starts from a dictionary of the protocol's keys so even the first messages compress well. Every frame is a
+ * 4 byte length followed by the compressed frame of the wrapped codec.
+ */
+public class DeflateCodec implements MessageCodec {
+
+    public final static int LENGTH_BYTES = 4;
+
+    private final static byte[] DICTIONARY = createDictionary();
+
+    private MessageCodec codec;
+    private Deflater deflater;      // Only used by the connection's writer
+    private Inflater inflater;      // Only used by the connection's reader
+    private byte[] buffer;          // Deflate output buffer, only used by the writer
+
+    // Metrics
+    private AtomicLong bytesEncoded;
+    private AtomicLong bytesSent;
+    private AtomicLong deflateNanos;
+    private AtomicLong bytesReceived;
+    private AtomicLong bytesDecoded;
+    private AtomicLong inflateNanos;
+
+    private final int BUFFER_SIZE = 8192;
+
+    // Error Messages
+    private final String ERROR_FRAME_LENGTH = "Frame length is out of range: ";
+    private final String ERROR_INFLATE = "Unable to decompress frame.";
+
+    /**
+     * DeflateCodec constructor
+     * @param codec codec whose frames are compressed
+     */
+    public DeflateCodec(MessageCodec codec) {
+        this.codec = codec;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.deflater.setDictionary(DICTIONARY);
+        this.inflater = new Inflater();
+        this.buffer = new byte[BUFFER_SIZE];
+        this.bytesEncoded = new AtomicLong(0);
+        this.bytesSent = new AtomicLong(0);
+        this.deflateNanos = new AtomicLong(0);
+        this.bytesReceived = new AtomicLong(0);
+        this.bytesDecoded = new AtomicLong(0);
+        this.inflateNanos = new AtomicLong(0);
+    }
+
+    /**
+     * Returns the number of bytes of the length prefix at the start of every frame
+     * @return header length
+     */
+    public int headerLength() {
+        return LENGTH_BYTES;
+    }
+
+    /**
+     * Returns the length of a frame (including its length prefix) from its header
+     * @param buffer buffer holding at least the frame's header
+     * @param offset offset of the frame within the buffer
+     * @return frame length
+     * @throws IOException frame is longer than allowed
+     */
+    public int frameLength(byte[] buffer, int offset) throws IOException {
+        int length = ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+        checkLength(length);
+        return LENGTH_BYTES + length;
+    }
+
+    /**
+     * Encodes a message with the wrapped codec and compresses the frame (connection's writer only)
+     * @param message message
+     * @return frame bytes
+     * @throws IOException message cannot be encoded
+     */
+    public byte[] encodeFrame(String message) throws IOException {
+        return compress(codec.encodeFrame(message));
+    }
+
+    /**
+     * Compresses the wrapped codec's frame of a message, which is shared with the other connections that use that
+     * codec, so only the compression is done per connection (connection's writer only)
+     * @param message message
+     * @return frame bytes
+     * @throws IOException message cannot be encoded
+     */
+    public byte[] encodeFrame(OutgoingMessage message) throws IOException {
+        return compress(codec.encodeFrame(message));
+    }
+
+    /**
+     * Compresses a frame of the wrapped codec into this connection's deflate stream
+     * @param frame frame of the wrapped codec
+     * @return frame bytes
+     */
+    private byte[] compress(byte[] frame) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream b = new ByteArrayOutputStream(frame.length / 2 + LENGTH_BYTES);
+        b.write(0);
+        b.write(0);
+        b.write(0);
+        b.write(0);
+        deflater.setInput(frame);
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            b.write(buffer, 0, length);
+        } while (length == buffer.length);     // A full buffer may have more flushed output after it
+        byte[] compressed = b.toByteArray();
+        int payload = compressed.length - LENGTH_BYTES;
+        compressed[0] = (byte) (payload >>> 24);
+        compressed[1] = (byte) (payload >>> 16);
+        compressed[2] = (byte) (payload >>> 8);
+        compressed[3] = (byte) payload;
+        deflateNanos.addAndGet(System.nanoTime() - start);
+        bytesEncoded.addAndGet(frame.length);
+        bytesSent.addAndGet(compressed.length);
+        return compressed;
+    }
+
+    /**
+     * Decompresses a complete frame (including its length prefix) and decodes it with the wrapped codec (connection's
+     * reader only)
+     * @param frame frame bytes
+     * @param offset offset of the frame within the array
+     * @param length length of the frame including its length prefix
+     * @return message
+     * @throws IOException malformed frame
+     */
+    public String decodeFrame(byte[] frame, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        inflater.setInput(frame, offset + LENGTH_BYTES, length - LENGTH_BYTES);
+        ByteArrayOutputStream b = new ByteArrayOutputStream(Math.min(length * 4, BinaryFrameHandler.MAX_FRAME_LENGTH));
+        byte[] output = new byte[BUFFER_SIZE];
+        try {
+            while (true) {
+                int inflated = inflater.inflate(output);
+                if (inflated > 0) {
+                    b.write(output, 0, inflated);
+                    checkLength(b.size());
+                } else if (inflater.needsDictionary()) {
+                    inflater.setDictionary(DICTIONARY);
+                } else {
+                    // All input has been inflated (or the stream has ended)
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(ERROR_INFLATE);
+        }
+        if (!inflater.needsInput()) {
+            throw new IOException(ERROR_INFLATE);
+        }
+        byte[] decompressed = b.toByteArray();
+        inflateNanos.addAndGet(System.nanoTime() - start);
+        bytesReceived.addAndGet(length);
+        bytesDecoded.addAndGet(decompressed.length);
+        return codec.decodeFrame(decompressed, 0, decompressed.length);
+    }
+
+    /**
+     * Reads the next frame and decodes it into a message
+     * @param in stream
+     * @return message
+     * @throws IOException unable to read or decode the frame
+     */
+    public String read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] frame = new byte[LENGTH_BYTES + length];
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        in.readFully(frame, LENGTH_BYTES, length);
+        return decodeFrame(frame, 0, frame.length);
+    }
+
+    /**
+     * Returns a summary of how well the connection's messages have compressed and what it has cost
+     * @return summary
+     */
+    public String getStatistics() {
+        return String.format("sent %d bytes as %d (%.1f%%, %.1f ms deflating), received %d bytes as %d " +
+                        "(%.1f%%, %.1f ms inflating)", bytesEncoded.get(), bytesSent.get(),
+                percentage(bytesSent.get(), bytesEncoded.get()), deflateNanos.get() / 1e6, bytesDecoded.get(),
+                bytesReceived.get(), percentage(bytesReceived.get(), bytesDecoded.get()), inflateNanos.get() / 1e6);
+    }
+
+    /**
+     * Returns the compressed size as a percentage of the original size
+     * @param compressed compressed bytes
+     * @param original original bytes
+     * @return percentage
+     */
+    private double percentage(long compressed, long original) {
+        return original == 0 ? 0 : 100.0 * compressed / original;
+    }
+
+    /**
+     * Checks that a length fits in a frame
+     * @param length length
+     * @throws IOException length is out of range
+     */
+    private void checkLength(long length) throws IOException {
+        if (length < 0 || length > BinaryFrameHandler.MAX_FRAME_LENGTH) {
+            throw new IOException(ERROR_FRAME_LENGTH + length);
+        }
+    }
+
+    /**
+     * Builds the preset dictionary from the protocol's keys as they appear in messages. Deflate finds matches in
+     * the dictionary's end most cheaply, so the keys of drawings (the most common messages) come last.
+     * @return dictionary
+     */
+    private static byte[] createDictionary() {
+        String[] messageTypes = {
+                MessageProtocol.JOIN, MessageProtocol.REJECT, MessageProtocol.INVALID, MessageProtocol.REFRESH,
+                MessageProtocol.DISCONNECT, MessageProtocol.SHUT_DOWN, MessageProtocol.RESUME, MessageProtocol.CODEC,
+                MessageProtocol.PING, MessageProtocol.PONG, MessageProtocol.USER_LIST, MessageProtocol.STATE_CHUNK,
+                MessageProtocol.STATE, MessageProtocol.CANVAS_BATCH
+        };
+        String[] fields = {
+                MessageProtocol.BOARD, MessageProtocol.TOKEN, MessageProtocol.COLUMN, MessageProtocol.ROW, MessageProtocol.SEQ
+        };
+        String[] drawingTypes = {
+                MessageProtocol.TEXT_BOX, MessageProtocol.ERASER, MessageProtocol.OVAL, MessageProtocol.CIRCLE,
+                MessageProtocol.RECTANGLE, MessageProtocol.LINE
+        };
+        String[] drawingFields = {
+                MessageProtocol.TEXT, MessageProtocol.WIDTH, MessageProtocol.HEIGHT, MessageProtocol.POS_X,
+                MessageProtocol.POS_Y, MessageProtocol.POS_X1, MessageProtocol.POS_Y1, MessageProtocol.POS_X2,
+                MessageProtocol.POS_Y2, MessageProtocol.COLOR
+        };
+        StringBuilder dictionary = new StringBuilder();
+        for (String type : messageTypes) {
+            dictionary.append("{\"").append(MessageProtocol.TYPE).append("\":\"").append(type).append("\",\"")
+                    .append(type).append("\":");
+        }
+        for (String field : fields) {
+            dictionary.append(",\"").append(field).append("\":");
+        }
+        for (String type : drawingTypes) {
+            dictionary.append("{\"").append(MessageProtocol.TYPE).append("\":\"").append(type).append("\"");
+        }
+        for (String field : drawingFields) {
+            dictionary.append(",\"").append(field).append("\":");
+        }
+        dictionary.append("{\"").append(MessageProtocol.TYPE).append("\":\"").append(MessageProtocol.CANVAS)
+                .append("\",\"").append(MessageProtocol.CANVAS).append("\":{\"").append(MessageProtocol.TYPE)
+                .append("\":\"");
+        return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
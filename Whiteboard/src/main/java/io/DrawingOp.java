@@ -0,0 +1,161 @@
+package io;
+import java.awt.*;
+
+/**
+ * A single drawing (shape, line, text box or eraser) decoded from its message once, so the client and server can
+ * apply it without looking up each of its fields in the JSON again. Only the fields used by the drawing's type are
+ * set.
+ */
+public class DrawingOp {
+
+    private final String type;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final int x1;
+    private final int y1;
+    private final int x2;
+    private final int y2;
+    private final String text;
+    private final Color color;
+
+    /**
+     * DrawingOp constructor
+     * @param type type of drawing
+     * @param x x of the shape, eraser or text box
+     * @param y y of the shape, eraser or text box
+     * @param width width of the shape or eraser
+     * @param height height of the shape or eraser
+     * @param x1 x of the line's start
+     * @param y1 y of the line's start
+     * @param x2 x of the line's end
+     * @param y2 y of the line's end
+     * @param text text of the text box
+     * @param color color
+     */
+    DrawingOp(String type, int x, int y, int width, int height, int x1, int y1, int x2, int y2, String text,
+              Color color) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        this.text = text;
+        this.color = color;
+    }
+
+    /**
+     * Returns the type of drawing
+     * @return drawing type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the x of the shape, eraser or text box
+     * @return x
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y of the shape, eraser or text box
+     * @return y
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the width of the shape or eraser
+     * @return width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the shape or eraser
+     * @return height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the x of the line's start
+     * @return x1
+     */
+    public int getX1() {
+        return x1;
+    }
+
+    /**
+     * Returns the y of the line's start
+     * @return y1
+     */
+    public int getY1() {
+        return y1;
+    }
+
+    /**
+     * Returns the x of the line's end
+     * @return x2
+     */
+    public int getX2() {
+        return x2;
+    }
+
+    /**
+     * Returns the y of the line's end
+     * @return y2
+     */
+    public int getY2() {
+        return y2;
+    }
+
+    /**
+     * Returns the text of the text box
+     * @return text
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the color of the drawing
+     * @return color
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Returns the JSON string of the drawing, as it appears within a canvas message
+     * @return JSON string
+     */
+    public String toJSONString() {
+        JSONWriter writer = JSONWriter.begin().put(MessageProtocol.TYPE, type);
+        switch (type) {
+            case MessageProtocol.LINE:
+                writer.put(MessageProtocol.POS_X1, x1).put(MessageProtocol.POS_Y1, y1)
+                        .put(MessageProtocol.POS_X2, x2).put(MessageProtocol.POS_Y2, y2);
+                break;
+            case MessageProtocol.TEXT_BOX:
+                writer.put(MessageProtocol.TEXT, text).put(MessageProtocol.POS_X, x).put(MessageProtocol.POS_Y, y);
+                break;
+            default:
+                writer.put(MessageProtocol.POS_X, x).put(MessageProtocol.POS_Y, y)
+                        .put(MessageProtocol.WIDTH, width).put(MessageProtocol.HEIGHT, height);
+                break;
+        }
+        return writer.put(MessageProtocol.COLOR, color.getRGB()).end();
+    }
+}
@@ -0,0 +1,106 @@
+package io;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * JSON codec, framing each message like DataOutputStream.writeUTF. Spoken by every client, and used for the join
+ * handshake before another codec is negotiated.
+ */
+public class FrameHandler implements MessageCodec {
+
+    // Frames use the same layout as DataOutputStream.writeUTF (2 byte length + modified UTF-8)
+    public final static int LENGTH_BYTES = 2;
+    public final static int MAX_FRAME_LENGTH = 65535;
+
+    /**
+     * FrameHandler default constructor
+     */
+    public FrameHandler() {}
+
+    /**
+     * Returns the number of bytes of the length prefix at the start of every frame
+     * @return header length
+     */
+    public int headerLength() {
+        return LENGTH_BYTES;
+    }
+
+    /**
+     * Returns the length of a frame (including its length prefix) from its header
+     * @param buffer buffer holding at least the frame's header
+     * @param offset offset of the frame within the buffer
+     * @return frame length
+     */
+    public int frameLength(byte[] buffer, int offset) {
+        return LENGTH_BYTES + (((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF));
+    }
+
+    /**
+     * Encodes a message into a length-prefixed frame readable by DataInputStream.readUTF
+     * @param message message
+     * @return frame bytes
+     * @throws IOException message is too long to fit in a single frame
+     */
+    public byte[] encodeFrame(String message) throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream(message.length() + LENGTH_BYTES);
+        DataOutputStream out = new DataOutputStream(b);
+        out.writeUTF(message);
+        return b.toByteArray();
+    }
+
+    /**
+     * Decodes a complete frame (including its length prefix) back into a message
+     * @param frame frame bytes
+     * @param offset offset of the frame within the array
+     * @param length length of the frame including its length prefix
+     * @return message
+     * @throws IOException malformed frame
+     */
+    public String decodeFrame(byte[] frame, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, offset, length));
+        return in.readUTF();
+    }
+
+    /**
+     * Writes a message as a single frame
+     * @param out stream
+     * @param message message
+     * @throws IOException message is too long to fit in a single frame, or unable to write it
+     */
+    public void write(DataOutputStream out, String message) throws IOException {
+        out.writeUTF(message);
+    }
+
+    /**
+     * Reads the next frame and decodes it into a message
+     * @param in stream
+     * @return message
+     * @throws IOException unable to read the frame
+     */
+    public String read(DataInputStream in) throws IOException {
+        return in.readUTF();
+    }
+
+    /**
+     * Returns the number of bytes a message takes up in a frame, excluding the length prefix
+     * @param message message
+     * @return encoded length
+     */
+    public int encodedLength(String message) {
+        int length = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
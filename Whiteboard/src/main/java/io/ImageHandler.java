@@ -1,22 +1,67 @@
 package io;
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Base64;
 
 public class ImageHandler {
 
+    // Image Formats
+    public final static String FORMAT_PNG = "png";
+    public final static String FORMAT_RAW = "raw";     // Uncompressed RGB pixels
+    public final static String FORMAT_RLE = "rle";     // Runs of identical RGB pixels
+    public final static int DEFAULT_LEVEL = -1;        // ImageIO's own PNG compression level
+    public final static int MAX_LEVEL = 9;
+
+    // Raw and RLE images start with a magic number and their size, PNGs with their own signature
+    private final static int MAGIC_RAW = 0x57425257;   // "WBRW"
+    private final static int MAGIC_RLE = 0x5742524C;   // "WBRL"
+    private final static int HEADER_BYTES = 12;
+    private final static int BYTES_PER_PIXEL = 3;
+    private final static int MAX_PIXELS = 1 << 24;
+
     private final String IMG_FORMAT = "png";
 
+    private String format;
+    private int level;
+
     // Error Messages
     private final String ERROR_ENCODE = "Error encoding image.";
     private final String ERROR_DECODE = "Error decoding image byte string.";
 
     /**
-     * ImageHandler default constructor
+     * ImageHandler default constructor, encoding images as PNG at the default compression level
+     */
+    public ImageHandler() {
+        this(FORMAT_PNG, DEFAULT_LEVEL);
+    }
+
+    /**
+     * ImageHandler constructor. Images in any format can be decoded, whatever format is used for encoding.
+     * @param format format images are encoded in (png, raw or rle)
+     * @param level deflate level (0-9) of encoded PNGs, or DEFAULT_LEVEL
+     */
+    public ImageHandler(String format, int level) {
+        this.format = format;
+        this.level = level;
+    }
+
+    /**
+     * Returns true if images can be encoded in the format
+     * @param format format
+     * @return boolean
      */
-    public ImageHandler() {}
+    public static boolean isValidFormat(String format) {
+        return format.equals(FORMAT_PNG) || format.equals(FORMAT_RAW) || format.equals(FORMAT_RLE);
+    }
 
     /**
      * Encodes the image in Base64 format and into a string
@@ -25,14 +70,8 @@ public class ImageHandler {
      * @throws ImageHandlerException error encoding the image
      */
     public String getImageString(BufferedImage image) throws ImageHandlerException {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        byte[] imageBytes;
         try {
-            ImageIO.write(image, IMG_FORMAT, b);
-            imageBytes = b.toByteArray();
-            String imageString = Base64.getEncoder().encodeToString(imageBytes);
-            b.close();
-            return imageString;
+            return Base64.getEncoder().encodeToString(getImageBytes(image));
         } catch (Exception e) {
            throw new ImageHandlerException(ERROR_ENCODE);
         }
@@ -46,10 +85,144 @@ public class ImageHandler {
      */
     public BufferedImage convertImageString(String imageString) throws ImageHandlerException {
         try {
-            return ImageIO.read(
-                    new ByteArrayInputStream(Base64.getDecoder().decode(imageString)));
+            byte[] imageBytes = Base64.getDecoder().decode(imageString);
+            BufferedImage image = readPixels(imageBytes);
+            if (image == null) {
+                image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            }
+            return image;
         } catch (Exception e) {
             throw new ImageHandlerException(ERROR_DECODE);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Encodes the image in the handler's format
+     * @param image image
+     * @return image bytes
+     * @throws IOException error encoding the image
+     */
+    private byte[] getImageBytes(BufferedImage image) throws IOException {
+        if (!format.equals(FORMAT_PNG)) {
+            return writePixels(image, format.equals(FORMAT_RLE));
+        }
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        if (level == DEFAULT_LEVEL) {
+            ImageIO.write(image, IMG_FORMAT, b);
+            return b.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(IMG_FORMAT).next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(b)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            // The PNG writer maps quality 1.0 to no compression and 0.0 to the best
+            param.setCompressionQuality(1.0f - (float) level / MAX_LEVEL);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return b.toByteArray();
+    }
+
+    /**
+     * Writes the image's pixels as RGB, either one after another or as runs of identical pixels. Each run is a varint
+     * count followed by the pixel.
+     * @param image image
+     * @param isRunLength true to write runs
+     * @return image bytes
+     */
+    private byte[] writePixels(BufferedImage image, boolean isRunLength) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        // Enough for the worst case, a run of one for every pixel
+        byte[] bytes = new byte[HEADER_BYTES + pixels.length * (BYTES_PER_PIXEL + (isRunLength ? 1 : 0))];
+        int length = writeInt(bytes, 0, isRunLength ? MAGIC_RLE : MAGIC_RAW);
+        length = writeInt(bytes, length, width);
+        length = writeInt(bytes, length, height);
+        int i = 0;
+        while (i < pixels.length) {
+            int pixel = pixels[i];
+            int run = 1;
+            if (isRunLength) {
+                while (i + run < pixels.length && pixels[i + run] == pixel) {
+                    run++;
+                }
+                int value = run;
+                while ((value & ~0x7F) != 0) {
+                    bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                    value >>>= 7;
+                }
+                bytes[length++] = (byte) value;
+            }
+            bytes[length++] = (byte) (pixel >>> 16);
+            bytes[length++] = (byte) (pixel >>> 8);
+            bytes[length++] = (byte) pixel;
+            i += run;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Writes a big-endian int into an array
+     * @param bytes array
+     * @param offset offset to write at
+     * @param value value
+     * @return offset after the value
+     */
+    private int writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    /**
+     * Reads an image written by writePixels
+     * @param imageBytes image bytes
+     * @return image, or null if the bytes are not a raw or RLE image
+     * @throws IOException malformed image
+     */
+    private BufferedImage readPixels(byte[] imageBytes) throws IOException {
+        if (imageBytes.length < HEADER_BYTES) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(imageBytes));
+        int magic = in.readInt();
+        if (magic != MAGIC_RAW && magic != MAGIC_RLE) {
+            return null;
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_PIXELS) {
+            throw new IOException(ERROR_DECODE);
+        }
+        int[] pixels = new int[width * height];
+        int i = 0;
+        while (i < pixels.length) {
+            int run = 1;
+            if (magic == MAGIC_RLE) {
+                run = 0;
+                for (int shift = 0; ; shift += 7) {
+                    int next = in.readUnsignedByte();
+                    run |= (next & 0x7F) << shift;
+                    if ((next & 0x80) == 0) {
+                        break;
+                    }
+                }
+                if (run <= 0 || run > pixels.length - i) {
+                    throw new IOException(ERROR_DECODE);
+                }
+            }
+            int pixel = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+            for (int end = i + run; i < end; i++) {
+                pixels[i] = pixel;
+            }
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+}
@@ -1,16 +1,27 @@
 package io;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import org.json.simple.JSONValue;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Reads and writes the protocol's JSON messages. Messages are read with a streaming reader and written with a
+ * streaming writer, both reused by each thread, so the hot path builds no intermediate maps and boxes no numbers.
+ */
 public class JSONHandler {
 
     // Error Messages
-    private final String ERROR_PARSE = "Error when parsing JSON string.";
     private final String ERROR_GET_STRING = "Error getting 'String' value of a key.";
     private final String ERROR_GET_INT= "Error getting 'int' value of a key.";
     private final String ERROR_GET_ARRAY = "Error getting 'ArrayList<String>' value of a key";
+    private final String ERROR_GET_DRAWINGS = "Error getting the drawings of a batch.";
+    private final String ERROR_GET_DRAWING = "Error getting the fields of a drawing.";
+
+    // Drawing Types
+    private final static String[] DRAWING_TYPES = {
+            MessageProtocol.RECTANGLE, MessageProtocol.CIRCLE, MessageProtocol.OVAL, MessageProtocol.LINE,
+            MessageProtocol.TEXT_BOX, MessageProtocol.ERASER
+    };
 
     /**
      * JSONHandler default constructor
@@ -25,7 +36,8 @@ public class JSONHandler {
      * @throws JSONHandlerException error when parsing JSON string
      */
     public String processString(String string, String key) throws JSONHandlerException {
-        return getKeyValue(parseString(string), key);
+        JSONReader reader = JSONReader.of(string);
+        return reader.find(key) ? getKeyValue(reader) : null;
     }
 
     /**
@@ -36,7 +48,24 @@ public class JSONHandler {
      * @throws JSONHandlerException error when parsing JSON string
      */
     public int processInt(String string, String key) throws JSONHandlerException {
-        return (getKeyValueInt(parseString(string), key));
+        JSONReader reader = JSONReader.of(string);
+        if (!reader.find(key)) {
+            throw new JSONHandlerException(ERROR_GET_INT);
+        }
+        return (int) getKeyValueLong(reader);
+    }
+
+    /**
+     * Returns the value (long) of the given key in the JSON string, or a default if the key is missing
+     * @param string JSON string
+     * @param key key
+     * @param defaultValue value returned if the key is missing
+     * @return long value
+     * @throws JSONHandlerException error when parsing JSON string
+     */
+    public long processLong(String string, String key, long defaultValue) throws JSONHandlerException {
+        JSONReader reader = JSONReader.of(string);
+        return reader.find(key) ? getKeyValueLong(reader) : defaultValue;
     }
 
     /**
@@ -47,7 +76,20 @@ public class JSONHandler {
      * @throws JSONHandlerException error when parsing JSON string
      */
     public ArrayList<String> processStringArray(String string, String key) throws JSONHandlerException {
-        return getKeyValueArray(parseString(string), key);
+        JSONReader reader = JSONReader.of(string);
+        if (!reader.find(key) || reader.isNull()) {
+            return null;
+        }
+        ArrayList<String> values = new ArrayList<>();
+        try {
+            reader.beginArray();
+            while (reader.nextElement()) {
+                values.add(reader.readString());
+            }
+        } catch (JSONHandlerException e) {
+            throw new JSONHandlerException(ERROR_GET_ARRAY);
+        }
+        return values;
     }
 
     /**
@@ -59,113 +101,256 @@ public class JSONHandler {
      * @param <T> type parameter
      */
     public <T> String createJSONString(String type, String key, T value) {
-        JSONObject jsonObject = new JSONObject();
-        jsonObject.put(type, key);
-        jsonObject.put(key, value);
-        return jsonObject.toJSONString();
+        JSONWriter writer = JSONWriter.begin().put(type, key);
+        putValue(writer, key, value);
+        return writer.end();
+    }
+
+    /**
+     * Creates a JSON string that is used in message exchange, carrying an extra value under a second key
+     * @param type type
+     * @param key key
+     * @param value value
+     * @param extraKey key of the extra value
+     * @param extraValue extra value
+     * @return JSON string
+     * @param <T> type parameter
+     */
+    public <T> String createJSONString(String type, String key, T value, String extraKey, Object extraValue) {
+        JSONWriter writer = JSONWriter.begin().put(type, key);
+        putValue(writer, key, value);
+        putValue(writer, extraKey, extraValue);
+        return writer.end();
     }
 
     /**
-     * Creates a JSON object that contains a shape information such as their coordinates
-     * @return JSON object
+     * Creates a JSON string that is used in message exchange, whose value is already serialized JSON, without
+     * parsing it again
+     * @param type type
+     * @param key key
+     * @param json JSON of the value
+     * @return JSON string
      */
-    public JSONObject createShape(String key, String key1, String key2, String key3, String key4, String key5,
-                                  String val, int val1, int val2, int val3, int val4, Color val5) {
-        JSONObject jsonShape = new JSONObject();
-        jsonShape.put(key, val);
-        jsonShape.put(key1, val1);
-        jsonShape.put(key2, val2);
-        jsonShape.put(key3, val3);
-        jsonShape.put(key4, val4);
-        jsonShape.put(key5, val5.getRGB());
-        return jsonShape;
+    public String createJSONMessage(String type, String key, String json) {
+        return JSONWriter.begin().put(type, key).putRaw(key, json).end();
     }
 
     /**
-     * Creates a JSON object that contains a text box information such as their coordinates
-     * @return JSON object
+     * Creates a JSON string that is used in message exchange, whose value is already serialized JSON, carrying an
+     * extra integer under a second key
+     * @param type type
+     * @param key key
+     * @param json JSON of the value
+     * @param extraKey key of the extra value
+     * @param extraValue extra value
+     * @return JSON string
      */
-    public JSONObject createText(String key, String key1, String key2, String key3, String key4,
-                                 String val, String val1, int val2, int val3, Color val4) {
-        JSONObject jsonText = new JSONObject();
-        jsonText.put(key, val);
-        jsonText.put(key1, val1);
-        jsonText.put(key2, val2);
-        jsonText.put(key3, val3);
-        jsonText.put(key4, val4.getRGB());
-        return jsonText;
+    public String createJSONMessage(String type, String key, String json, String extraKey, long extraValue) {
+        return JSONWriter.begin().put(type, key).putRaw(key, json).put(extraKey, extraValue).end();
     }
 
     /**
-     * Returns the JSON string containing the drawing from within another JSON string
-     * @param string JSON string
+     * Adds a key and value to an already serialized JSON object, without parsing it again
+     * @param string JSON string of an object
      * @param key key
+     * @param value value
+     * @return JSON string
+     * @param <T> type parameter
+     */
+    public <T> String addJSONField(String string, String key, T value) {
+        int end = string.lastIndexOf('}');
+        return string.substring(0, end) + ",\"" + JSONValue.escape(key) + "\":" + JSONValue.toJSONString(value)
+                + string.substring(end);
+    }
+
+    /**
+     * Creates the JSON string of a drawing of a shape, such as its coordinates
      * @return JSON string
+     */
+    public String createShape(String key, String key1, String key2, String key3, String key4, String key5,
+                              String val, int val1, int val2, int val3, int val4, Color val5) {
+        return JSONWriter.begin().put(key, val).put(key1, val1).put(key2, val2).put(key3, val3).put(key4, val4)
+                .put(key5, val5.getRGB()).end();
+    }
+
+    /**
+     * Creates the JSON string of a drawing of a text box, such as its coordinates
+     * @return JSON string
+     */
+    public String createText(String key, String key1, String key2, String key3, String key4,
+                             String val, String val1, int val2, int val3, Color val4) {
+        return JSONWriter.begin().put(key, val).put(key1, val1).put(key2, val2).put(key3, val3)
+                .put(key4, val4.getRGB()).end();
+    }
+
+    /**
+     * Parses the drawing within a JSON string once into a drawing op
+     * @param string JSON string
+     * @param key key
+     * @return drawing op
      * @throws JSONHandlerException error when parsing JSON string
      */
-    public String processDrawing(String string, String key) throws JSONHandlerException {
-        JSONObject parsed = parseString(string);
-        JSONObject drawing = (JSONObject) parsed.get(key);
-        return drawing.toJSONString();
+    public DrawingOp processDrawingOp(String string, String key) throws JSONHandlerException {
+        JSONReader reader = JSONReader.of(string);
+        if (!reader.find(key)) {
+            throw new JSONHandlerException(ERROR_GET_DRAWING);
+        }
+        return getDrawingOp(reader);
     }
 
     /**
-     * Parse JSON string
+     * Parses every drawing in a batch of drawings once into drawing ops
      * @param string JSON string
-     * @return JSON Object
+     * @param key key
+     * @return drawing ops in order
      * @throws JSONHandlerException error when parsing JSON string
      */
-    private JSONObject parseString(String string) throws JSONHandlerException {
-        JSONParser parser = new JSONParser();
-        try {
-            return (JSONObject) parser.parse(string);
-        } catch (Exception e) {
-            throw new JSONHandlerException(ERROR_PARSE);
+    public ArrayList<DrawingOp> processDrawingOpArray(String string, String key) throws JSONHandlerException {
+        JSONReader reader = JSONReader.of(string);
+        if (!reader.find(key)) {
+            throw new JSONHandlerException(ERROR_GET_DRAWINGS);
+        }
+        ArrayList<DrawingOp> drawings = new ArrayList<>();
+        reader.beginArray();
+        while (reader.nextElement()) {
+            drawings.add(getDrawingOp(reader));
         }
+        return drawings;
     }
 
     /**
-     * Returns the value (string) of a given key
-     * @param jsonObject JSON object
+     * Creates a JSON string whose value is an array of already serialized JSON objects, without parsing them again
+     * @param type type
      * @param key key
-     * @return string value
-     * @throws JSONHandlerException error when retrieving value from the key
+     * @param elements JSON strings of the array elements
+     * @return JSON string
      */
-    private String getKeyValue(JSONObject jsonObject, String key) throws JSONHandlerException {
-        try {
-            return (String) jsonObject.get(key);
-        } catch (Exception e) {
-            throw new JSONHandlerException(ERROR_GET_STRING);
+    public String createJSONBatch(String type, String key, List<String> elements) {
+        JSONWriter writer = JSONWriter.begin().put(type, key).beginArray(key);
+        for (String element : elements) {
+            writer.rawElement(element);
         }
+        return writer.endArray().end();
     }
 
     /**
-     * Returns the value (int) of a given key
-     * @param jsonObject JSON object
+     * Writes a value of one of the types messages carry
+     * @param writer writer
+     * @param key key
+     * @param value string, number, list of strings or null
+     */
+    private void putValue(JSONWriter writer, String key, Object value) {
+        if (value == null || value instanceof String) {
+            writer.put(key, (String) value);
+        } else if (value instanceof Long || value instanceof Integer) {
+            writer.put(key, ((Number) value).longValue());
+        } else if (value instanceof List) {
+            writer.beginArray(key);
+            for (Object element : (List<?>) value) {
+                writer.element((String) element);
+            }
+            writer.endArray();
+        } else {
+            writer.putRaw(key, JSONValue.toJSONString(value));
+        }
+    }
+
+    /**
+     * Reads the fields used by a drawing's type from the drawing object at the reader's position
+     * @param reader reader
+     * @return drawing op
+     * @throws JSONHandlerException drawing is missing a field
+     */
+    private DrawingOp getDrawingOp(JSONReader reader) throws JSONHandlerException {
+        if (reader.isNull()) {
+            throw new JSONHandlerException(ERROR_GET_DRAWING);
+        }
+        reader.enter();
+        String type = reader.find(MessageProtocol.TYPE) ? reader.readKnownString() : null;
+        if (!isDrawingType(type)) {
+            throw new JSONHandlerException(ERROR_GET_DRAWING);
+        }
+        Color color = new Color(getDrawingInt(reader, MessageProtocol.COLOR));
+        DrawingOp drawing;
+        if (type.equals(MessageProtocol.LINE)) {
+            int x1 = getDrawingInt(reader, MessageProtocol.POS_X1);
+            int y1 = getDrawingInt(reader, MessageProtocol.POS_Y1);
+            int x2 = getDrawingInt(reader, MessageProtocol.POS_X2);
+            int y2 = getDrawingInt(reader, MessageProtocol.POS_Y2);
+            drawing = new DrawingOp(type, 0, 0, 0, 0, x1, y1, x2, y2, null, color);
+        } else if (type.equals(MessageProtocol.TEXT_BOX)) {
+            int x = getDrawingInt(reader, MessageProtocol.POS_X);
+            int y = getDrawingInt(reader, MessageProtocol.POS_Y);
+            String text = reader.find(MessageProtocol.TEXT) ? getKeyValue(reader) : null;
+            if (text == null) {
+                throw new JSONHandlerException(ERROR_GET_DRAWING);
+            }
+            drawing = new DrawingOp(type, x, y, 0, 0, 0, 0, 0, 0, text, color);
+        } else {
+            // Rectangle, Circle, Oval shapes and the eraser
+            int x = getDrawingInt(reader, MessageProtocol.POS_X);
+            int y = getDrawingInt(reader, MessageProtocol.POS_Y);
+            int width = getDrawingInt(reader, MessageProtocol.WIDTH);
+            int height = getDrawingInt(reader, MessageProtocol.HEIGHT);
+            drawing = new DrawingOp(type, x, y, width, height, 0, 0, 0, 0, null, color);
+        }
+        reader.exit();
+        return drawing;
+    }
+
+    /**
+     * Returns true if the type is one of the drawings that can be drawn on the canvas
+     * @param type drawing type, or null
+     * @return boolean
+     */
+    private boolean isDrawingType(String type) {
+        for (String drawingType : DRAWING_TYPES) {
+            if (drawingType.equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value (int) of a field of the drawing being read
+     * @param reader reader
      * @param key key
      * @return int value
-     * @throws JSONHandlerException error when retrieving value from the key
+     * @throws JSONHandlerException the drawing has no such field
      */
-    private int getKeyValueInt(JSONObject jsonObject, String key) throws JSONHandlerException {
+    private int getDrawingInt(JSONReader reader, String key) throws JSONHandlerException {
+        if (!reader.find(key)) {
+            throw new JSONHandlerException(ERROR_GET_DRAWING);
+        }
+        return (int) getKeyValueLong(reader);
+    }
+
+    /**
+     * Returns the string value at the reader's position
+     * @param reader reader
+     * @return string value
+     * @throws JSONHandlerException the value is not a string
+     */
+    private String getKeyValue(JSONReader reader) throws JSONHandlerException {
         try {
-            return (int) (long) jsonObject.get(key);
-        } catch (Exception e) {
-            throw new JSONHandlerException(ERROR_GET_INT);
+            return reader.readKnownString();
+        } catch (JSONHandlerException e) {
+            throw new JSONHandlerException(ERROR_GET_STRING);
         }
     }
 
     /**
-     * Returns the value (array list of string) of a given key
-     * @param jsonObject JSON object
-     * @param key key
-     * @return string list
-     * @throws JSONHandlerException
+     * Returns the integer value at the reader's position
+     * @param reader reader
+     * @return long value
+     * @throws JSONHandlerException the value is not an integer
      */
-    private ArrayList<String> getKeyValueArray(JSONObject jsonObject, String key) throws JSONHandlerException {
+    private long getKeyValueLong(JSONReader reader) throws JSONHandlerException {
         try {
-            return (ArrayList<String>) jsonObject.get(key);
-        } catch (Exception e) {
-            throw new JSONHandlerException(ERROR_GET_ARRAY);
+            return reader.readLong();
+        } catch (JSONHandlerException e) {
+            throw new JSONHandlerException(ERROR_GET_INT);
         }
     }
 }
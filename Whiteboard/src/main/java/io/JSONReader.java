@@ -0,0 +1,371 @@
+package io;
+
+/**
+ * Streaming reader for the JSON messages of the protocol. Values are read straight from the message text by key,
+ * without building a map of the message or boxing its numbers, and one reader is reused for every message a thread
+ * reads. Keys are looked up within the current object, which starts as the message itself.
+ */
+class JSONReader {
+
+    private final static ThreadLocal<JSONReader> READERS = ThreadLocal.withInitial(JSONReader::new);
+    private final static int MAX_DEPTH = 16;
+
+    // Message and drawing types, most common first
+    private final static String[] KNOWN_STRINGS = {
+            MessageProtocol.CANVAS, MessageProtocol.LINE, MessageProtocol.CANVAS_BATCH, MessageProtocol.RECTANGLE,
+            MessageProtocol.OVAL, MessageProtocol.CIRCLE, MessageProtocol.ERASER, MessageProtocol.TEXT_BOX,
+            MessageProtocol.RELAY, MessageProtocol.PING, MessageProtocol.PONG, MessageProtocol.STATE_CHUNK,
+            MessageProtocol.STATE, MessageProtocol.USER_LIST, MessageProtocol.REFRESH, MessageProtocol.JOIN,
+            MessageProtocol.RESUME, MessageProtocol.CODEC, MessageProtocol.REJECT, MessageProtocol.INVALID,
+            MessageProtocol.DISCONNECT, MessageProtocol.SHUT_DOWN, MessageProtocol.RELAY_STATE
+    };
+
+    private String json;
+    private int pos;
+    private int[] scopes;           // Start of each object entered, the message itself first
+    private int depth;
+    private StringBuilder buffer;   // Unescapes strings that contain escapes
+
+    // Error Messages
+    private final String ERROR_PARSE = "Error when parsing JSON string.";
+
+    /**
+     * JSONReader default constructor
+     */
+    private JSONReader() {
+        this.scopes = new int[MAX_DEPTH];
+        this.buffer = new StringBuilder();
+    }
+
+    /**
+     * Returns the calling thread's reader, positioned at the start of a message
+     * @param json JSON string of an object
+     * @return reader
+     * @throws JSONHandlerException string is not a JSON object
+     */
+    static JSONReader of(String json) throws JSONHandlerException {
+        JSONReader reader = READERS.get();
+        reader.json = json;
+        reader.depth = 0;
+        reader.pos = 0;
+        reader.skipWhitespace();
+        reader.expect('{');
+        reader.scopes[0] = reader.pos - 1;
+        return reader;
+    }
+
+    /**
+     * Moves to the value of a key of the current object
+     * @param key key
+     * @return false if the object has no such key
+     * @throws JSONHandlerException malformed JSON
+     */
+    boolean find(String key) throws JSONHandlerException {
+        pos = scopes[depth] + 1;
+        skipWhitespace();
+        if (peek() == '}') {
+            return false;
+        }
+        while (true) {
+            boolean isMatch = readKey(key);
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (isMatch) {
+                return true;
+            }
+            skipValue();
+            skipWhitespace();
+            if (peek() == '}') {
+                return false;
+            }
+            expect(',');
+            skipWhitespace();
+        }
+    }
+
+    /**
+     * Returns true if the value at the current position is null
+     * @return boolean
+     */
+    boolean isNull() {
+        return json.startsWith("null", pos);
+    }
+
+    /**
+     * Reads the string value at the current position
+     * @return string, or null if the value is null
+     * @throws JSONHandlerException value is not a string
+     */
+    String readString() throws JSONHandlerException {
+        if (isNull()) {
+            pos += 4;
+            return null;
+        }
+        expect('"');
+        int start = pos;
+        int quote = json.indexOf('"', start);
+        if (quote < 0) {
+            throw new JSONHandlerException(ERROR_PARSE);
+        }
+        int escape = start;
+        while (escape < quote && json.charAt(escape) != '\\') {
+            escape++;
+        }
+        if (escape == quote) {
+            pos = quote + 1;
+            return json.substring(start, quote);
+        }
+        // Unescape the string from its first escape
+        buffer.setLength(0);
+        buffer.append(json, start, escape);
+        pos = escape;
+        return readEscapedString();
+    }
+
+    /**
+     * Reads the string value at the current position, returning the protocol's constant it equals if there is one so
+     * that message and drawing types are not copied out of the message
+     * @return string, or null if the value is null
+     * @throws JSONHandlerException value is not a string
+     */
+    String readKnownString() throws JSONHandlerException {
+        if (pos < json.length() && json.charAt(pos) == '"') {
+            for (String constant : KNOWN_STRINGS) {
+                int end = pos + 1 + constant.length();
+                if (json.startsWith(constant, pos + 1) && end < json.length() && json.charAt(end) == '"') {
+                    pos = end + 1;
+                    return constant;
+                }
+            }
+        }
+        return readString();
+    }
+
+    /**
+     * Reads the integer value at the current position
+     * @return value
+     * @throws JSONHandlerException value is not an integer
+     */
+    long readLong() throws JSONHandlerException {
+        boolean isNegative = peek() == '-';
+        if (isNegative) {
+            pos++;
+        }
+        int start = pos;
+        long value = 0;
+        while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') {
+            value = value * 10 + (json.charAt(pos++) - '0');
+        }
+        if (pos == start || pos - start > 18 || (pos < json.length() && ".eE".indexOf(json.charAt(pos)) >= 0)) {
+            // Not an integer, or too long to read without overflowing
+            throw new JSONHandlerException(ERROR_PARSE);
+        }
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * Makes the object at the current position the current object
+     * @throws JSONHandlerException value is not an object
+     */
+    void enter() throws JSONHandlerException {
+        if (depth + 1 == MAX_DEPTH || peek() != '{') {
+            throw new JSONHandlerException(ERROR_PARSE);
+        }
+        scopes[++depth] = pos;
+    }
+
+    /**
+     * Makes the enclosing object the current object again, moving past the object that was current
+     * @throws JSONHandlerException malformed JSON
+     */
+    void exit() throws JSONHandlerException {
+        pos = scopes[depth--];
+        skipValue();
+    }
+
+    /**
+     * Moves into the array at the current position
+     * @throws JSONHandlerException value is not an array
+     */
+    void beginArray() throws JSONHandlerException {
+        expect('[');
+        skipWhitespace();
+    }
+
+    /**
+     * Moves to the next element of the array being read
+     * @return false if the array has no more elements
+     * @throws JSONHandlerException malformed JSON
+     */
+    boolean nextElement() throws JSONHandlerException {
+        skipWhitespace();
+        char c = peek();
+        if (c == ']') {
+            pos++;
+            return false;
+        }
+        if (c == ',') {
+            pos++;
+            skipWhitespace();
+        }
+        return true;
+    }
+
+    /**
+     * Moves past the value at the current position
+     * @throws JSONHandlerException malformed JSON
+     */
+    void skipValue() throws JSONHandlerException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            while (true) {
+                int quote = json.indexOf('"', pos);
+                if (quote < 0) {
+                    throw new JSONHandlerException(ERROR_PARSE);
+                }
+                int backslashes = 0;
+                while (json.charAt(quote - 1 - backslashes) == '\\') {
+                    backslashes++;
+                }
+                pos = quote + 1;
+                if (backslashes % 2 == 0) {
+                    // Not an escaped quote
+                    return;
+                }
+            }
+        } else if (c == '{' || c == '[') {
+            int nesting = 0;
+            do {
+                char next = next();
+                if (next == '"') {
+                    pos--;
+                    skipValue();
+                } else if (next == '{' || next == '[') {
+                    nesting++;
+                } else if (next == '}' || next == ']') {
+                    nesting--;
+                }
+            } while (nesting > 0);
+        } else {
+            // Number, true, false or null
+            int start = pos;
+            while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (pos == start) {
+                throw new JSONHandlerException(ERROR_PARSE);
+            }
+        }
+    }
+
+    /**
+     * Reads a key and compares it to the one looked for, without copying it unless it contains escapes
+     * @param key key looked for
+     * @return true if they are equal
+     * @throws JSONHandlerException malformed JSON
+     */
+    private boolean readKey(String key) throws JSONHandlerException {
+        if (peek() != '"') {
+            throw new JSONHandlerException(ERROR_PARSE);
+        }
+        int end = pos + 1 + key.length();
+        if (json.startsWith(key, pos + 1) && end < json.length() && json.charAt(end) == '"') {
+            pos = end + 1;
+            return true;
+        }
+        int start = pos;
+        skipValue();
+        for (int i = start; i < pos; i++) {
+            if (json.charAt(i) == '\\') {
+                pos = start;
+                return key.equals(readString());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the rest of a string that contains escapes into the buffer
+     * @return string
+     * @throws JSONHandlerException malformed string
+     */
+    private String readEscapedString() throws JSONHandlerException {
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return buffer.toString();
+            } else if (c != '\\') {
+                buffer.append(c);
+                continue;
+            }
+            char escaped = next();
+            switch (escaped) {
+                case 'b': buffer.append('\b'); break;
+                case 'f': buffer.append('\f'); break;
+                case 'n': buffer.append('\n'); break;
+                case 'r': buffer.append('\r'); break;
+                case 't': buffer.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > json.length()) {
+                        throw new JSONHandlerException(ERROR_PARSE);
+                    }
+                    try {
+                        buffer.append((char) Integer.parseInt(json, pos, pos + 4, 16));
+                    } catch (NumberFormatException e) {
+                        throw new JSONHandlerException(ERROR_PARSE);
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    // Quote, backslash and slash stand for themselves
+                    buffer.append(escaped);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Moves past whitespace
+     */
+    private void skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Moves past an expected character
+     * @param c character
+     * @throws JSONHandlerException the character is not at the current position
+     */
+    private void expect(char c) throws JSONHandlerException {
+        if (next() != c) {
+            throw new JSONHandlerException(ERROR_PARSE);
+        }
+    }
+
+    /**
+     * Returns the character at the current position without moving past it
+     * @return character
+     * @throws JSONHandlerException end of the string
+     */
+    private char peek() throws JSONHandlerException {
+        if (pos >= json.length()) {
+            throw new JSONHandlerException(ERROR_PARSE);
+        }
+        return json.charAt(pos);
+    }
+
+    /**
+     * Returns the character at the current position and moves past it
+     * @return character
+     * @throws JSONHandlerException end of the string
+     */
+    private char next() throws JSONHandlerException {
+        char c = peek();
+        pos++;
+        return c;
+    }
+}
@@ -0,0 +1,229 @@
+package io;
+
+/**
+ * Streaming writer for the JSON messages of the protocol. Keys and values are appended straight to a buffer that is
+ * reused for every message a thread writes, without building a map of the message or boxing its numbers.
+ */
+class JSONWriter {
+
+    private final static ThreadLocal<JSONWriter> WRITERS = ThreadLocal.withInitial(JSONWriter::new);
+    private final static int INITIAL_CAPACITY = 256;
+    private final static int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private final static char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private StringBuilder buffer;
+    private boolean hasValue;       // The current object or array already has a value, so the next needs a comma
+
+    /**
+     * JSONWriter default constructor
+     */
+    private JSONWriter() {
+        this.buffer = new StringBuilder(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the calling thread's writer, emptied and with an object begun
+     * @return writer
+     */
+    static JSONWriter begin() {
+        JSONWriter writer = WRITERS.get();
+        if (writer.buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            // Do not hold on to the buffer of an unusually large message
+            writer.buffer = new StringBuilder(INITIAL_CAPACITY);
+        }
+        writer.buffer.setLength(0);
+        writer.buffer.append('{');
+        writer.hasValue = false;
+        return writer;
+    }
+
+    /**
+     * Adds a string value
+     * @param key key
+     * @param value value, or null
+     * @return writer
+     */
+    JSONWriter put(String key, String value) {
+        key(key);
+        if (value == null) {
+            buffer.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    /**
+     * Adds an integer value
+     * @param key key
+     * @param value value
+     * @return writer
+     */
+    JSONWriter put(String key, long value) {
+        key(key);
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Adds a value that is already serialized JSON
+     * @param key key
+     * @param json JSON of the value, or null
+     * @return writer
+     */
+    JSONWriter putRaw(String key, String json) {
+        key(key);
+        buffer.append(json == null ? "null" : json);
+        return this;
+    }
+
+    /**
+     * Begins an object value
+     * @param key key
+     * @return writer
+     */
+    JSONWriter beginObject(String key) {
+        key(key);
+        buffer.append('{');
+        hasValue = false;
+        return this;
+    }
+
+    /**
+     * Begins an object element of the array being written
+     * @return writer
+     */
+    JSONWriter beginObject() {
+        separate();
+        buffer.append('{');
+        hasValue = false;
+        return this;
+    }
+
+    /**
+     * Ends an object value
+     * @return writer
+     */
+    JSONWriter endObject() {
+        return close('}');
+    }
+
+    /**
+     * Begins an array value
+     * @param key key
+     * @return writer
+     */
+    JSONWriter beginArray(String key) {
+        key(key);
+        buffer.append('[');
+        hasValue = false;
+        return this;
+    }
+
+    /**
+     * Adds a string element to the array being written
+     * @param value value, or null
+     * @return writer
+     */
+    JSONWriter element(String value) {
+        separate();
+        if (value == null) {
+            buffer.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    /**
+     * Adds an element that is already serialized JSON to the array being written
+     * @param json JSON of the element
+     * @return writer
+     */
+    JSONWriter rawElement(String json) {
+        separate();
+        buffer.append(json);
+        return this;
+    }
+
+    /**
+     * Ends an array value
+     * @return writer
+     */
+    JSONWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Ends the message and returns it
+     * @return JSON string
+     */
+    String end() {
+        buffer.append('}');
+        return buffer.toString();
+    }
+
+    /**
+     * Ends the object or array value being written
+     * @param close closing character
+     * @return writer
+     */
+    private JSONWriter close(char close) {
+        buffer.append(close);
+        hasValue = true;
+        return this;
+    }
+
+    /**
+     * Writes a key, preceded by a comma if needed
+     * @param key key
+     */
+    private void key(String key) {
+        separate();
+        string(key);
+        buffer.append(':');
+    }
+
+    /**
+     * Writes a comma if the current object or array already has a value
+     */
+    private void separate() {
+        if (hasValue) {
+            buffer.append(',');
+        }
+        hasValue = true;
+    }
+
+    /**
+     * Writes a quoted string, escaping the characters JSON requires
+     * @param value string
+     */
+    private void string(String value) {
+        buffer.append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != 0x2028 && c != 0x2029) {
+                continue;
+            }
+            buffer.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"': buffer.append("\\\""); break;
+                case '\\': buffer.append("\\\\"); break;
+                case '\b': buffer.append("\\b"); break;
+                case '\f': buffer.append("\\f"); break;
+                case '\n': buffer.append("\\n"); break;
+                case '\r': buffer.append("\\r"); break;
+                case '\t': buffer.append("\\t"); break;
+                default:
+                    // Other control characters, and line separators some JSON readers do not accept raw
+                    buffer.append("\\u").append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF])
+                            .append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+                    break;
+            }
+        }
+        buffer.append(value, start, value.length());
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,74 @@
+package io;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Wire format of the messages exchanged with a client. Messages are handled as JSON strings everywhere else, a codec
+ * only decides how they are framed and encoded on the connection.
+ */
+public interface MessageCodec {
+
+    /**
+     * Returns the number of bytes of the length prefix at the start of every frame
+     * @return header length
+     */
+    int headerLength();
+
+    /**
+     * Returns the length of a frame (including its length prefix) from its header
+     * @param buffer buffer holding at least the frame's header
+     * @param offset offset of the frame within the buffer
+     * @return frame length
+     * @throws IOException frame is longer than the codec allows
+     */
+    int frameLength(byte[] buffer, int offset) throws IOException;
+
+    /**
+     * Encodes a message into a length-prefixed frame
+     * @param message message
+     * @return frame bytes
+     * @throws IOException message cannot be encoded
+     */
+    byte[] encodeFrame(String message) throws IOException;
+
+    /**
+     * Encodes a message that may also be sent to other connections into a length-prefixed frame. Codecs that keep no
+     * state between messages share one frame of the message with every other connection; a codec that does must
+     * override this to encode the message for its own connection.
+     * @param message message
+     * @return frame bytes, which must not be modified
+     * @throws IOException message cannot be encoded
+     */
+    default byte[] encodeFrame(OutgoingMessage message) throws IOException {
+        return message.getFrame(this);
+    }
+
+    /**
+     * Decodes a complete frame (including its length prefix) back into a message
+     * @param frame frame bytes
+     * @param offset offset of the frame within the array
+     * @param length length of the frame including its length prefix
+     * @return message
+     * @throws IOException malformed frame
+     */
+    String decodeFrame(byte[] frame, int offset, int length) throws IOException;
+
+    /**
+     * Writes a message as a single frame
+     * @param out stream
+     * @param message message
+     * @throws IOException unable to encode or write the message
+     */
+    default void write(DataOutputStream out, String message) throws IOException {
+        out.write(encodeFrame(message));
+    }
+
+    /**
+     * Reads the next frame and decodes it into a message
+     * @param in stream
+     * @return message
+     * @throws IOException unable to read or decode the frame
+     */
+    String read(DataInputStream in) throws IOException;
+}
@@ -8,11 +8,33 @@ public class MessageProtocol {
     public final static String  REJECT = "REJECT";
     public final static String INVALID = "INVALID";
     public final static String  STATE = "STATE";
+    public final static String STATE_CHUNK = "STATE_CHUNK";
     public final static String  CANVAS = "CANVAS";
+    public final static String CANVAS_BATCH = "CANVAS_BATCH";
     public final static String REFRESH = "REFRESH";
     public final static String USER_LIST = "USER_LIST";
     public final static String DISCONNECT = "DISCONNECT";
     public final static String SHUT_DOWN = "SHUT_DOWN";
+    public final static String RESUME = "RESUME";
+    public final static String CODEC = "CODEC";
+    public final static String PING = "PING";
+    public final static String PONG = "PONG";
+    public final static String RELAY = "RELAY";
+    public final static String RELAY_STATE = "RELAY_STATE";
+
+    // Message Information
+    public final static String BOARD = "BOARD";
+    public final static String SEQ = "SEQ";
+    public final static String TOKEN = "TOKEN";
+    public final static String ROW = "ROW";
+    public final static String COLUMN = "COLUMN";
+    public final static String COMPRESSION = "COMPRESSION";
+
+    // Codecs
+    public final static String CODEC_JSON = "json";
+    public final static String CODEC_BINARY = "binary";
+    public final static String COMPRESSION_NONE = "none";
+    public final static String COMPRESSION_DEFLATE = "deflate";
 
     // Drawing Types
     public final static String RECTANGLE = "RECTANGLE";
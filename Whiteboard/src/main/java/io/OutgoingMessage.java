@@ -0,0 +1,62 @@
+package io;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A message queued for one or more connections. Its frame is encoded at most once per codec and the same bytes are
+ * written to every connection that speaks that codec, so sending a message to many clients does not encode it again
+ * for each of them.
+ */
+public class OutgoingMessage {
+
+    // Most messages are only ever sent as JSON or binary
+    private final static int INITIAL_CODECS = 2;
+
+    private final String message;
+    private Class<?>[] codecs;      // Codecs the message has been encoded with, created on first use
+    private byte[][] frames;        // Frame encoded by each of those codecs
+    private int encoded;
+
+    /**
+     * OutgoingMessage constructor
+     * @param message message
+     */
+    public OutgoingMessage(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Returns the message
+     * @return message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the message's frame in a codec that keeps no state between messages, encoding it if no connection has
+     * yet. The frame is shared, so it must not be modified.
+     * @param codec codec
+     * @return frame bytes
+     * @throws IOException message cannot be encoded
+     */
+    public synchronized byte[] getFrame(MessageCodec codec) throws IOException {
+        Class<?> type = codec.getClass();
+        for (int i = 0; i < encoded; i++) {
+            if (codecs[i] == type) {
+                return frames[i];
+            }
+        }
+        byte[] frame = codec.encodeFrame(message);
+        if (codecs == null) {
+            codecs = new Class<?>[INITIAL_CODECS];
+            frames = new byte[INITIAL_CODECS][];
+        } else if (encoded == codecs.length) {
+            codecs = Arrays.copyOf(codecs, encoded * 2);
+            frames = Arrays.copyOf(frames, encoded * 2);
+        }
+        codecs[encoded] = type;
+        frames[encoded++] = frame;
+        return frame;
+    }
+}
@@ -0,0 +1,47 @@
+package io;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ThreadHandler {
+
+    // Thread Modes
+    public final static String PLATFORM = "platform";
+    public final static String VIRTUAL = "virtual";
+
+    // Looked up at runtime so the default (Java 17) build still compiles
+    private final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    private final String ERROR_VIRTUAL = "Virtual threads require Java 21 or later, using platform threads instead.";
+
+    /**
+     * ThreadHandler default constructor
+     */
+    public ThreadHandler() {}
+
+    /**
+     * Returns true if the thread mode is supported
+     * @param mode thread mode
+     * @return boolean
+     */
+    public boolean isValidMode(String mode) {
+        return mode.equals(PLATFORM) || mode.equals(VIRTUAL);
+    }
+
+    /**
+     * Creates an executor that runs every submitted task on its own thread of the given mode
+     * @param mode thread mode
+     * @return executor
+     */
+    public ExecutorService createExecutor(String mode) {
+        if (mode.equals(VIRTUAL)) {
+            try {
+                Method factory = Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY);
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println(ERROR_VIRTUAL);
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+}
@@ -0,0 +1,134 @@
+package server;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Join requests waiting for the admin, in the order they arrived. Requests can be admitted automatically by policy,
+ * otherwise they wait here until the admin approves or rejects them (individually, all at once or by pattern).
+ */
+class AdmissionQueue {
+
+    // Admission Policies
+    static final String MANUAL = "manual";
+    static final String AUTO = "auto";
+
+    private LinkedHashMap<String, User> pending;    // Keyed by case-folded username
+    private String policy;
+    private Pattern autoApprovePattern;             // Null if no username is approved automatically by pattern
+
+    /**
+     * AdmissionQueue constructor
+     * @param policy manual or auto
+     * @param autoApprovePattern usernames approved without waiting for the admin, or null
+     */
+    AdmissionQueue(String policy, Pattern autoApprovePattern) {
+        this.pending = new LinkedHashMap<>();
+        this.policy = policy;
+        this.autoApprovePattern = autoApprovePattern;
+    }
+
+    /**
+     * Returns true if a join request is approved without waiting for the admin
+     * @param username username
+     * @return boolean
+     */
+    boolean isAutoApproved(String username) {
+        return policy.equals(AUTO)
+                || (autoApprovePattern != null && autoApprovePattern.matcher(username).matches());
+    }
+
+    /**
+     * Adds a join request unless a request with the same username is already waiting
+     * @param user user requesting to join
+     * @return false if a request with the same username is already waiting
+     */
+    synchronized boolean add(User user) {
+        return pending.putIfAbsent(fold(user.getUsername()), user) == null;
+    }
+
+    /**
+     * Removes every waiting request
+     * @return removed requests
+     */
+    synchronized List<User> removeAll() {
+        ArrayList<User> removed = new ArrayList<>(pending.values());
+        pending.clear();
+        return removed;
+    }
+
+    /**
+     * Removes the waiting requests whose username matches a pattern
+     * @param pattern username pattern
+     * @return removed requests
+     */
+    synchronized List<User> removeMatching(Pattern pattern) {
+        ArrayList<User> removed = new ArrayList<>();
+        Iterator<User> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            User user = iterator.next();
+            if (pattern.matcher(user.getUsername()).matches()) {
+                removed.add(user);
+                iterator.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the waiting requests of the given usernames
+     * @param usernames usernames
+     * @return removed requests
+     */
+    synchronized List<User> remove(List<String> usernames) {
+        ArrayList<User> removed = new ArrayList<>();
+        for (String username : usernames) {
+            User user = pending.remove(fold(username));
+            if (user != null) {
+                removed.add(user);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the waiting request made through a request handler, if any
+     * @param serverRequestHandler serverRequestHandler
+     * @return false if no request from the handler was waiting
+     */
+    synchronized boolean cancel(ServerRequestHandler serverRequestHandler) {
+        return pending.values().removeIf(user -> user.getServerRequestHandler() == serverRequestHandler);
+    }
+
+    /**
+     * Returns true if no request is waiting
+     * @return boolean
+     */
+    synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Returns the usernames of all waiting requests in the order they arrived
+     * @return usernames
+     */
+    synchronized ArrayList<String> getUsernames() {
+        ArrayList<String> usernames = new ArrayList<>();
+        for (User user : pending.values()) {
+            usernames.add(user.getUsername());
+        }
+        return usernames;
+    }
+
+    /**
+     * Returns the case-folded form of a username used as its key
+     * @param username username
+     * @return key
+     */
+    private String fold(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,242 @@
+package server;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The named boards hosted by the server. Each board has its own users, join requests and drawings, and is created
+ * when it is first joined. A board other than the default one is removed once it has been unused for the board idle
+ * timeout, so abandoned boards do not keep their memory or count towards the maximum. Boards of a cluster are kept
+ * for as long as the node runs, since every node must keep the same boards. All boards share a fixed pool of worker
+ * threads and a single timer, so the threads in use follow the number of active boards rather than the number of
+ * boards or server processes.
+ */
+class BoardDirectory {
+
+    // Board joined by clients that do not name one, shown in the admin GUI
+    static final String DEFAULT_BOARD = "default";
+
+    private Server server;
+    private ServerOptions options;
+    private String adminUsername;
+    private ConcurrentHashMap<String, ServerController> boards;
+    private ExecutorService workerPool;
+    private ExecutorService snapshotPool;              // Encodes snapshot tiles in parallel
+    private ScheduledExecutorService timer;
+    private HeartbeatMonitor heartbeatMonitor;
+    private ClusterNode clusterNode;                    // Null if the server is not part of a cluster
+    private CopyOnWriteArrayList<PeerConnection> peers; // Followers subscribed to every board (leader only)
+
+    private final Pattern BOARD_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+    private final long SHUT_DOWN_TIMEOUT = 1000;
+    private final String BOARD_CREATED = "Board created: %s (%d of %d)";
+    private final String BOARD_REMOVED = "Board removed after being unused: %s (%d of %d)";
+
+    /**
+     * BoardDirectory constructor, creates the default board
+     * @param server server
+     * @param options startup options
+     * @param adminUsername admin username, reserved on every board
+     */
+    BoardDirectory(Server server, ServerOptions options, String adminUsername) {
+        this.server = server;
+        this.options = options;
+        this.adminUsername = adminUsername;
+        this.boards = new ConcurrentHashMap<>();
+        this.peers = new CopyOnWriteArrayList<>();
+        this.workerPool = Executors.newFixedThreadPool(options.getBoardWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "board-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.snapshotPool = new ForkJoinPool(options.getSnapshotWorkers(), pool -> {
+            // Fork/join workers are daemon threads
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("snapshot-encoder");
+            return thread;
+        }, null, false);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "board-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeatMonitor = new HeartbeatMonitor(timer, options.getHeartbeatInterval(), options.getIdleTimeout());
+        getBoard(DEFAULT_BOARD);
+        long boardIdleTimeout = options.getBoardIdleTimeout();
+        if (boardIdleTimeout > 0 && !options.isClustered()) {
+            // Checked twice per timeout, so a board is removed at most half a timeout late
+            long interval = Math.max(boardIdleTimeout / 2, 1);
+            timer.scheduleWithFixedDelay(this::removeUnusedBoards, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the board with the given id, creating it if it does not exist yet
+     * @param boardId board id, or null for the default board
+     * @return board's controller, or null if the id is invalid or the server hosts its maximum number of boards
+     */
+    synchronized ServerController getBoard(String boardId) {
+        if (boardId == null) {
+            boardId = DEFAULT_BOARD;
+        }
+        ServerController serverController = boards.get(boardId);
+        if (serverController == null && BOARD_ID_PATTERN.matcher(boardId).matches()
+                && boards.size() < options.getMaxBoards()) {
+            serverController = new ServerController(this, boardId,
+                    boardId.equals(DEFAULT_BOARD) && !options.isHeadless());
+            serverController.createAdmin(adminUsername);
+            for (PeerConnection peer : peers) {
+                serverController.addPeer(peer);
+            }
+            boards.put(boardId, serverController);
+            System.out.println(String.format(BOARD_CREATED, boardId, boards.size(), options.getMaxBoards()));
+        } else if (serverController != null) {
+            serverController.touch();
+        }
+        return serverController;
+    }
+
+    /**
+     * Removes a board found unused, unless it has already been replaced
+     * @param boardId board id
+     * @param serverController board's controller
+     */
+    synchronized void removeBoard(String boardId, ServerController serverController) {
+        if (boards.remove(boardId, serverController)) {
+            System.out.println(String.format(BOARD_REMOVED, boardId, boards.size(), options.getMaxBoards()));
+        }
+    }
+
+    /**
+     * Asks every board except the default one to remove itself if it has been unused for the board idle timeout
+     */
+    private void removeUnusedBoards() {
+        for (ServerController serverController : boards.values()) {
+            if (serverController != getDefaultBoard()) {
+                serverController.removeIfUnused(options.getBoardIdleTimeout());
+            }
+        }
+    }
+
+    /**
+     * Joins the cluster configured in the startup options
+     * @throws IOException unable to connect to the leader or accept followers
+     */
+    void startCluster() throws IOException {
+        clusterNode = new ClusterNode(this, options);
+        clusterNode.start();
+    }
+
+    /**
+     * Returns this server's place in its cluster
+     * @return cluster node, or null if the server is not part of a cluster
+     */
+    ClusterNode getClusterNode() {
+        return clusterNode;
+    }
+
+    /**
+     * Subscribes a follower to the drawings of every board, current and future
+     * @param peer connection to the follower
+     */
+    synchronized void addPeer(PeerConnection peer) {
+        peers.add(peer);
+        for (ServerController serverController : boards.values()) {
+            serverController.addPeer(peer);
+        }
+    }
+
+    /**
+     * Unsubscribes a follower from every board
+     * @param peer connection to the follower
+     */
+    synchronized void removePeer(PeerConnection peer) {
+        peers.remove(peer);
+        for (ServerController serverController : boards.values()) {
+            serverController.removePeer(peer);
+        }
+    }
+
+    /**
+     * Returns the board shown in the admin GUI
+     * @return default board's controller
+     */
+    ServerController getDefaultBoard() {
+        return boards.get(DEFAULT_BOARD);
+    }
+
+    /**
+     * Returns every hosted board
+     * @return board controllers
+     */
+    Collection<ServerController> getBoards() {
+        return boards.values();
+    }
+
+    /**
+     * Returns a new executor that runs one board's tasks in order on the shared worker pool
+     * @return board executor
+     */
+    SerialExecutor createBoardExecutor() {
+        return new SerialExecutor(workerPool);
+    }
+
+    /**
+     * Returns the pool shared by all boards for encoding snapshots
+     * @return snapshot pool
+     */
+    Executor getSnapshotPool() {
+        return snapshotPool;
+    }
+
+    /**
+     * Returns the timer shared by all boards for delayed tasks
+     * @return timer
+     */
+    ScheduledExecutorService getTimer() {
+        return timer;
+    }
+
+    /**
+     * Returns the monitor that pings client connections and closes silent ones
+     * @return heartbeat monitor
+     */
+    HeartbeatMonitor getHeartbeatMonitor() {
+        return heartbeatMonitor;
+    }
+
+    /**
+     * Returns the server's startup options
+     * @return options
+     */
+    ServerOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Tells the users of every board that the server is shutting down, gives their connections a moment to deliver
+     * it and exits the program
+     */
+    void shutDown() {
+        long deadline = System.currentTimeMillis() + SHUT_DOWN_TIMEOUT;
+        for (ServerController serverController : boards.values()) {
+            serverController.notifyShutDown();
+        }
+        for (ServerController serverController : boards.values()) {
+            serverController.awaitClients(deadline);
+        }
+        if (clusterNode != null) {
+            clusterNode.close();
+        }
+        server.exitProgram();
+    }
+}
@@ -0,0 +1,91 @@
+package server;
+import io.FrameHandler;
+import io.JSONHandler;
+import io.MessageProtocol;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects drawings for one tick and sends them to every client as a single multi-drawing message, instead of one
+ * message (and one socket write) per drawing per client
+ */
+class CanvasBatcher {
+
+    private ServerController serverController;
+    private JSONHandler jsonHandler;
+    private FrameHandler frameHandler;
+    private ScheduledExecutorService timer;
+    private Executor boardExecutor;
+    private long tick;
+
+    // Drawings waiting for the next tick
+    private ArrayList<String> pending;
+    private int pendingLength;
+    private long lastSeq;       // Sequence number of the newest pending drawing
+
+    // Room left in a frame for the message around the drawings
+    private final int MAX_BATCH_LENGTH = FrameHandler.MAX_FRAME_LENGTH - 256;
+
+    /**
+     * CanvasBatcher constructor
+     * @param serverController server controller
+     * @param tick milliseconds drawings are collected for before being sent
+     * @param timer timer that ends each tick
+     * @param boardExecutor executor of the board, which sends the batch at the end of the tick
+     */
+    CanvasBatcher(ServerController serverController, long tick, ScheduledExecutorService timer,
+                  Executor boardExecutor) {
+        this.serverController = serverController;
+        this.tick = tick;
+        this.timer = timer;
+        this.boardExecutor = boardExecutor;
+        this.jsonHandler = new JSONHandler();
+        this.frameHandler = new FrameHandler();
+        this.pending = new ArrayList<>();
+        this.pendingLength = 0;
+    }
+
+    /**
+     * Adds a drawing to the current tick, starting the tick if it is the first drawing. A drawing always fits in a
+     * batch on its own, as larger drawings are dropped before they are sequenced.
+     * @param drawingJSON JSON string containing drawing information
+     * @param seq drawing's sequence number
+     */
+    synchronized void add(String drawingJSON, long seq) {
+        int length = frameHandler.encodedLength(drawingJSON) + 1;
+        if (pendingLength + length > MAX_BATCH_LENGTH) {
+            // Batch would no longer fit in a single frame, send it early
+            flush();
+        }
+        if (pending.isEmpty()) {
+            timer.schedule(() -> boardExecutor.execute(this::flush), tick, TimeUnit.MILLISECONDS);
+        }
+        pending.add(drawingJSON);
+        pendingLength += length;
+        lastSeq = seq;
+    }
+
+    /**
+     * Sends the drawings collected so far. Sending only queues the batch on each connection, so it is done while
+     * holding the lock to keep batches in order.
+     */
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        send(pending);
+        pending = new ArrayList<>();
+        pendingLength = 0;
+    }
+
+    /**
+     * Sends a batch of drawings to all clients, with the sequence number of its last drawing
+     * @param drawings JSON strings of the drawings
+     */
+    private void send(ArrayList<String> drawings) {
+        String batch = jsonHandler.createJSONBatch(MessageProtocol.TYPE, MessageProtocol.CANVAS_BATCH, drawings);
+        serverController.broadcast(jsonHandler.addJSONField(batch, MessageProtocol.SEQ, lastSeq));
+    }
+}
@@ -0,0 +1,189 @@
+package server;
+import io.MessageProtocol;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This server's place in a cluster of nodes sharing the same boards. One node is the leader: the other nodes (the
+ * followers) forward their clients' drawings to it, the leader applies drawings from every node in a single order and
+ * relays each one to all followers, which apply them in that order. Every node then sends drawings only to its own
+ * clients.
+ */
+class ClusterNode {
+
+    private BoardDirectory boards;
+    private ExecutorService executor;
+    private int clusterPort;
+    private String leaderHost;          // Null if this node is the leader
+    private int leaderPort;
+
+    private ServerSocket serverSocket;  // Leader only, accepts followers
+    private PeerConnection leader;      // Follower only, connection to the leader
+    private volatile boolean isClosed;
+
+    private final String LEADER_LISTENING = "Cluster leader listening for nodes on port ";
+    private final String FOLLOWER_CONNECTED = "Cluster node connected from ";
+    private final String FOLLOWER_DISCONNECTED = "Cluster node disconnected.";
+    private final String LEADER_CONNECTED = "Connected to cluster leader at ";
+    private final String LEADER_LOST = "Connection to the cluster leader has been lost, shutting down.";
+    private final String ERROR_ACCEPT = "Unable to accept connections from cluster nodes.";
+    private final String ERROR_FORWARD = "The cluster leader is not keeping up, a change to board %s was dropped.";
+    private final String ERROR_BOARD_LEADER = "Unable to host board %s forwarded by a cluster node (invalid id or " +
+            "maximum number of boards reached), the change was dropped.";
+    private final String ERROR_BOARD_FOLLOWER = "Unable to host board %s relayed by the cluster leader (invalid id " +
+            "or maximum number of boards reached), disconnecting from the leader.";
+
+    /**
+     * ClusterNode constructor
+     * @param boards boards hosted by the server
+     * @param options startup options
+     */
+    ClusterNode(BoardDirectory boards, ServerOptions options) {
+        this.boards = boards;
+        this.clusterPort = options.getClusterPort();
+        this.leaderHost = options.getClusterLeaderHost();
+        this.leaderPort = options.getClusterLeaderPort();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cluster");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connects to the leader, or starts accepting followers if this node is the leader
+     * @throws IOException unable to connect to the leader or bind the cluster port
+     */
+    void start() throws IOException {
+        if (isFollower()) {
+            leader = new PeerConnection(new Socket(leaderHost, leaderPort), this);
+            leader.start(executor);
+            System.out.println(LEADER_CONNECTED + leaderHost + ":" + leaderPort);
+        } else {
+            serverSocket = new ServerSocket(clusterPort);
+            System.out.println(LEADER_LISTENING + clusterPort + "...");
+            executor.execute(this::acceptFollowers);
+        }
+    }
+
+    /**
+     * Accepts followers and subscribes each of them to every board
+     */
+    private void acceptFollowers() {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                PeerConnection follower = new PeerConnection(socket, this);
+                follower.start(executor);
+                boards.addPeer(follower);
+                System.out.println(FOLLOWER_CONNECTED + socket.getRemoteSocketAddress());
+            }
+        } catch (IOException e) {
+            if (!isClosed) {
+                System.out.println(ERROR_ACCEPT);
+            }
+        }
+    }
+
+    /**
+     * Returns true if this node forwards its drawings to a leader instead of ordering them itself
+     * @return boolean
+     */
+    boolean isFollower() {
+        return leaderHost != null;
+    }
+
+    /**
+     * Sends a drawing or state of a board to the leader, which relays it back in order
+     * @param type relay or relayed state
+     * @param boardId board id
+     * @param value canvas message or encoded state
+     */
+    void forward(String type, String boardId, String value) {
+        if (!leader.send(type, boardId, value) && leader.isConnected()) {
+            // The leader never received it, so no node applies it
+            System.out.println(String.format(ERROR_FORWARD, boardId));
+        }
+    }
+
+    /**
+     * Applies a drawing or state received from another node. On the leader it comes from a follower and is relayed
+     * to all followers, on a follower it comes from the leader and is already in order. A board this node cannot
+     * host is reported: the leader drops the change, so no node applies it, and a follower disconnects from the
+     * leader rather than keep boards that differ from the leader's.
+     * @param peer connection it was received on
+     * @param type relay or relayed state
+     * @param boardId board id
+     * @param value canvas message or encoded state
+     */
+    void received(PeerConnection peer, String type, String boardId, String value) {
+        if (value == null) {
+            return;
+        }
+        ServerController serverController = boards.getBoard(boardId);
+        if (serverController == null) {
+            if (isFollower()) {
+                System.out.println(String.format(ERROR_BOARD_FOLLOWER, boardId));
+                peer.close();
+            } else {
+                System.out.println(String.format(ERROR_BOARD_LEADER, boardId));
+            }
+            return;
+        }
+        switch (type) {
+
+            case MessageProtocol.RELAY:
+
+                serverController.applyCanvas(value);
+                break;
+
+            case MessageProtocol.RELAY_STATE:
+
+                serverController.loadState(value);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Handles a lost connection to another node. A follower cannot keep its boards in order without the leader, so
+     * it shuts down.
+     * @param peer connection that was lost
+     */
+    void disconnected(PeerConnection peer) {
+        if (isClosed) {
+            // Node is shutting down
+            return;
+        }
+        if (isFollower()) {
+            System.out.println(LEADER_LOST);
+            boards.shutDown();
+        } else {
+            boards.removePeer(peer);
+            System.out.println(FOLLOWER_DISCONNECTED);
+        }
+    }
+
+    /**
+     * Stops accepting followers or closes the connection to the leader
+     */
+    void close() {
+        isClosed = true;
+        if (leader != null) {
+            leader.close();
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                System.out.println(ERROR_ACCEPT);
+            }
+        }
+    }
+}
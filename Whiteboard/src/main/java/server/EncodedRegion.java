@@ -0,0 +1,56 @@
+package server;
+import io.ImageHandlerException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * State chunk messages of a region of a board at one version of the region, encoded once and shared by every
+ * snapshot that includes the region until it changes. Callers that need the region while it is being encoded wait
+ * for that encoding instead of starting their own.
+ */
+class EncodedRegion {
+
+    private long version;
+    private CompletableFuture<List<String>> chunks;
+
+    /**
+     * EncodedRegion constructor, for a region that is yet to be encoded
+     * @param version version of the region
+     */
+    EncodedRegion(long version) {
+        this.version = version;
+        this.chunks = new CompletableFuture<>();
+    }
+
+    /**
+     * Returns the version of the region the chunks were encoded from
+     * @return version
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Provides the encoded chunks to the callers waiting for them
+     * @param encoded state chunk messages
+     */
+    void complete(List<String> encoded) {
+        chunks.complete(encoded);
+    }
+
+    /**
+     * Reports an encoding error to the callers waiting for the chunks
+     * @param e encoding error
+     */
+    void fail(ImageHandlerException e) {
+        chunks.completeExceptionally(e);
+    }
+
+    /**
+     * Returns the encoded chunks, which may still be being encoded
+     * @return state chunk messages, or an ImageHandlerException
+     */
+    CompletableFuture<List<String>> getChunks() {
+        return chunks;
+    }
+}
@@ -0,0 +1,135 @@
+package server;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread that drives reads and writes for the client channels assigned to it
+ */
+class EventLoop implements Runnable {
+
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean isRunning;
+
+    // Work handed over from other threads
+    private ConcurrentLinkedQueue<NioRequestHandler> pendingRegistrations;
+    private ConcurrentLinkedQueue<NioRequestHandler> pendingWrites;
+
+    private final String ERROR_SELECT = "Event loop is unable to select ready channels.";
+    private final String ERROR_CLOSE_SELECTOR = "Unable to close the event loop selector.";
+
+    /**
+     * EventLoop constructor
+     * @param name thread name
+     * @throws IOException unable to open a selector
+     */
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.pendingRegistrations = new ConcurrentLinkedQueue<>();
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Starts the event loop thread
+     */
+    void start() {
+        isRunning = true;
+        thread.start();
+    }
+
+    /**
+     * Selects ready channels and handles their reads and writes until the loop is stopped
+     */
+    public void run() {
+        while (isRunning) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.out.println(ERROR_SELECT);
+                break;
+            }
+            registerPending();
+            flushPending();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                NioRequestHandler handler = (NioRequestHandler) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    handler.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    handler.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns a new client channel to this event loop
+     * @param handler request handler of the channel
+     */
+    void register(NioRequestHandler handler) {
+        pendingRegistrations.add(handler);
+        selector.wakeup();
+    }
+
+    /**
+     * Asks the event loop to write a handler's queued frames
+     * @param handler request handler with queued frames
+     */
+    void requestWrite(NioRequestHandler handler) {
+        pendingWrites.add(handler);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Registers channels assigned since the last select (event loop thread)
+     */
+    private void registerPending() {
+        NioRequestHandler handler;
+        while ((handler = pendingRegistrations.poll()) != null) {
+            try {
+                handler.register(selector);
+            } catch (ClosedChannelException e) {
+                handler.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Writes frames queued since the last select (event loop thread)
+     */
+    private void flushPending() {
+        NioRequestHandler handler;
+        while ((handler = pendingWrites.poll()) != null) {
+            handler.flush();
+        }
+    }
+
+    /**
+     * Stops the event loop and closes its selector
+     * @param timeout milliseconds to wait for the loop thread to finish
+     */
+    void shutDown(long timeout) {
+        isRunning = false;
+        selector.wakeup();
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.out.println(ERROR_CLOSE_SELECTOR);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package server;
+import io.JSONHandler;
+import io.MessageProtocol;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pings every client connection at a fixed interval and closes the ones that have sent nothing (not even a pong) for
+ * longer than the idle timeout, so dead clients are removed instead of being written to indefinitely. A single timer
+ * task checks all connections.
+ */
+class HeartbeatMonitor {
+
+    private Set<ServerRequestHandler> handlers;
+    private long interval;
+    private long timeout;
+    private String ping;
+
+    private final String CONNECTION_REAPED = "No message from %s for %d ms, closing the connection.";
+    private final String UNKNOWN_USER = "a client that has not joined";
+
+    /**
+     * HeartbeatMonitor constructor, starts the checks unless heartbeats are disabled
+     * @param timer timer that runs the checks
+     * @param interval milliseconds between pings, or 0 to disable heartbeats
+     * @param timeout milliseconds a connection may stay silent before being closed
+     */
+    HeartbeatMonitor(ScheduledExecutorService timer, long interval, long timeout) {
+        this.handlers = ConcurrentHashMap.newKeySet();
+        this.interval = interval;
+        this.timeout = timeout;
+        this.ping = new JSONHandler().createJSONString(MessageProtocol.TYPE, MessageProtocol.PING,
+                MessageProtocol.PING);
+        if (interval > 0) {
+            timer.scheduleAtFixedRate(this::check, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts watching a new client connection
+     * @param handler client's request handler
+     */
+    void register(ServerRequestHandler handler) {
+        if (interval > 0) {
+            handlers.add(handler);
+        }
+    }
+
+    /**
+     * Forgets closed connections, closes silent ones and pings the rest
+     */
+    private void check() {
+        long now = System.currentTimeMillis();
+        for (ServerRequestHandler handler : handlers) {
+            if (!handler.isConnected()) {
+                handlers.remove(handler);
+            } else if (now - handler.getLastSeen() > timeout) {
+                String username = handler.getUsername() == null ? UNKNOWN_USER : handler.getUsername();
+                System.out.println(String.format(CONNECTION_REAPED, username, now - handler.getLastSeen()));
+                handlers.remove(handler);
+                handler.closeConnection();
+            } else {
+                handler.sendMessage(ping);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of connections being watched
+     * @return connection count
+     */
+    int getConnectionCount() {
+        return handlers.size();
+    }
+}
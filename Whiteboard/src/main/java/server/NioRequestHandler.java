@@ -0,0 +1,248 @@
+package server;
+import io.ImageHandlerException;
+import io.JSONHandlerException;
+import io.MessageCodec;
+import io.OutgoingMessage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request handler for a client connected through the non-blocking selector transport. Reads and writes are driven
+ * by the connection's event loop, so no thread is dedicated to the client.
+ */
+class NioRequestHandler extends ServerRequestHandler {
+
+    private SocketChannel channel;
+    private EventLoop eventLoop;
+    private SelectionKey key;
+    private SelectorServer selectorServer;
+    private boolean hasRequestedJoin;
+    private AtomicBoolean isOpen;
+    private AtomicBoolean isWriteRequested;
+
+    // Channel Buffers
+    private ByteBuffer readBuffer;
+    private ByteBuffer[] writeBuffers;  // Frames being written together, in order
+    private int writeOffset;            // First of the frames not yet completely written
+    private int writeCount;
+
+    private final int INITIAL_READ_BUFFER = 8192;
+    private final int MAX_GATHERED_FRAMES = 64;
+
+    // Error Messages
+    private final String ERROR_FRAME = "Received a malformed frame from client, closing the connection.";
+    private final String ERROR_CLOSE_CHANNEL = "Unable to close the client channel.";
+
+    /**
+     * NioRequestHandler constructor
+     * @param channel non-blocking client channel
+     * @param eventLoop event loop that owns the channel
+     * @param boards boards hosted by the server
+     * @param selectorServer transport that accepted the channel
+     */
+    NioRequestHandler(SocketChannel channel, EventLoop eventLoop, BoardDirectory boards,
+                      SelectorServer selectorServer) {
+        super(boards);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.selectorServer = selectorServer;
+        this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        this.writeBuffers = new ByteBuffer[MAX_GATHERED_FRAMES];
+        this.isOpen = new AtomicBoolean(true);
+        this.isWriteRequested = new AtomicBoolean(false);
+        hasRequestedJoin = false;
+    }
+
+    /**
+     * Registers the channel for reads with the event loop's selector (event loop thread)
+     * @param selector selector
+     * @throws ClosedChannelException channel was closed before registration
+     */
+    void register(Selector selector) throws ClosedChannelException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Reads the available bytes and processes every complete frame (event loop thread)
+     */
+    void onReadable() {
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            disconnect();
+            return;
+        }
+        if (read == -1) {
+            // Client disconnects
+            disconnect();
+            return;
+        }
+        messageReceived();
+        readBuffer.flip();
+        try {
+            // The join request is processed on the blocking executor, so a codec it negotiates is not seen here until a
+            // later read. No frame in the new codec can arrive before then, as the client sends nothing after its join
+            // request until it has received the codec acknowledgement, which this event loop writes.
+            MessageCodec codec = getCodec();
+            while (readBuffer.remaining() >= codec.headerLength()) {
+                int frameLength = codec.frameLength(readBuffer.array(), readBuffer.position());
+                if (readBuffer.remaining() < frameLength) {
+                    if (frameLength > readBuffer.capacity()) {
+                        // Grow the buffer to fit the partially received frame
+                        ByteBuffer larger = ByteBuffer.allocate(frameLength);
+                        larger.put(readBuffer);
+                        readBuffer = larger;
+                        return;
+                    }
+                    break;
+                }
+                String message = codec.decodeFrame(readBuffer.array(), readBuffer.position(), frameLength);
+                readBuffer.position(readBuffer.position() + frameLength);
+                dispatch(message);
+            }
+        } catch (IOException e) {
+            System.out.println(ERROR_FRAME);
+            disconnect();
+            return;
+        }
+        readBuffer.compact();
+        if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_READ_BUFFER) {
+            // Release the room grown for a large frame once it has been processed
+            readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        }
+    }
+
+    /**
+     * Hands a received message to the server. The join request is processed away from the event loop as it waits
+     * on the admin's response.
+     * @param message client incoming message
+     */
+    private void dispatch(String message) {
+        if (!hasRequestedJoin) {
+            hasRequestedJoin = true;
+            selectorServer.getBlockingExecutor().execute(() -> processMessage(message));
+        } else if (isPermitted()) {
+            processMessage(message);
+        }
+    }
+
+    /**
+     * Processes a message and reports any processing error
+     * @param message client incoming message
+     */
+    private void processMessage(String message) {
+        try {
+            process(message);
+        } catch (JSONHandlerException | ImageHandlerException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Asks the event loop to write the newly queued message
+     */
+    @Override
+    void messageQueued() {
+        if (isWriteRequested.compareAndSet(false, true)) {
+            eventLoop.requestWrite(this);
+        }
+    }
+
+    /**
+     * Closes the connection away from the caller, which may be iterating over the session's users
+     */
+    @Override
+    void closeConnection() {
+        getOutboundQueue().close();
+        selectorServer.getBlockingExecutor().execute(this::disconnect);
+    }
+
+    /**
+     * Writes queued messages until the queue is empty or the socket's send buffer is full (event loop thread). The
+     * queued frames are gathered into a single write, straight from their (possibly shared) arrays.
+     */
+    void flush() {
+        isWriteRequested.set(false);
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        OutboundQueue outbound = getOutboundQueue();
+        while (true) {
+            if (writeOffset == writeCount && !gatherFrames(outbound)) {
+                break;
+            }
+            try {
+                channel.write(writeBuffers, writeOffset, writeCount - writeOffset);
+            } catch (IOException e) {
+                disconnect();
+                return;
+            }
+            while (writeOffset < writeCount && !writeBuffers[writeOffset].hasRemaining()) {
+                writeBuffers[writeOffset++] = null;
+                outbound.written();
+            }
+            if (writeOffset < writeCount) {
+                // Wait for the socket to become writable again
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Takes the frames of the next queued messages to write, once the previous ones have been written
+     * @param outbound client's outbound queue
+     * @return false if no message is queued
+     */
+    private boolean gatherFrames(OutboundQueue outbound) {
+        writeOffset = 0;
+        writeCount = 0;
+        OutgoingMessage message;
+        while (writeCount < MAX_GATHERED_FRAMES && (message = outbound.poll()) != null) {
+            byte[] frame = encodeOrSkip(message);
+            if (frame == null) {
+                outbound.written();
+            } else {
+                writeBuffers[writeCount++] = ByteBuffer.wrap(frame);
+            }
+        }
+        return writeCount > 0;
+    }
+
+    /**
+     * Closes the connection and removes the client from the session
+     */
+    void disconnect() {
+        if (closeChannel()) {
+            clientDisconnected();
+        }
+    }
+
+    /**
+     * Closes the client channel
+     * @return true if this call closed the channel
+     */
+    boolean closeChannel() {
+        if (!isOpen.compareAndSet(true, false)) {
+            return false;
+        }
+        selectorServer.removeHandler(this);
+        getOutboundQueue().close();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println(ERROR_CLOSE_CHANNEL);
+        }
+        return true;
+    }
+}
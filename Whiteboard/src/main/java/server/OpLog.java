@@ -0,0 +1,70 @@
+package server;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded log of a board's most recent drawings, as sent to clients, so a reconnecting client can be sent only the
+ * drawings it missed. Only used on the board's executor.
+ */
+class OpLog {
+
+    private ArrayDeque<String> ops;
+    private int capacity;
+    private long lastSeq;       // Sequence number of the newest drawing (or of the last state change)
+
+    /**
+     * OpLog constructor
+     * @param capacity maximum number of drawings kept
+     */
+    OpLog(int capacity) {
+        this.ops = new ArrayDeque<>();
+        this.capacity = capacity;
+        this.lastSeq = 0;
+    }
+
+    /**
+     * Appends a drawing, dropping the oldest one if the log is full
+     * @param seq drawing's sequence number, one more than the previous one
+     * @param op message sent to clients for the drawing
+     */
+    void add(long seq, String op) {
+        if (ops.size() == capacity) {
+            ops.pollFirst();
+        }
+        ops.addLast(op);
+        lastSeq = seq;
+    }
+
+    /**
+     * Empties the log after a change that cannot be replayed as drawings (e.g. the board was cleared), so clients
+     * that have not seen the change are sent a snapshot instead
+     * @param seq sequence number of the change
+     */
+    void reset(long seq) {
+        ops.clear();
+        lastSeq = seq;
+    }
+
+    /**
+     * Returns the drawings made after a sequence number
+     * @param seq sequence number of the last drawing the client applied
+     * @return drawings in order, or null if some of them are no longer in the log
+     */
+    List<String> since(long seq) {
+        long firstSeq = lastSeq - ops.size() + 1;
+        if (seq < firstSeq - 1 || seq > lastSeq) {
+            return null;
+        }
+        ArrayList<String> missed = new ArrayList<>((int) (lastSeq - seq));
+        int skip = (int) (seq - firstSeq + 1);
+        for (String op : ops) {
+            if (skip > 0) {
+                skip--;
+            } else {
+                missed.add(op);
+            }
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,196 @@
+package server;
+import io.OutgoingMessage;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded queue of messages waiting to be written to a single client, drained by that client's writer only so frames
+ * always leave in the order they were queued
+ */
+class OutboundQueue {
+
+    private LinkedBlockingDeque<QueuedMessage> messages;
+    private AtomicInteger unwritten;    // Queued messages plus the one currently being written
+    private AtomicLong positions;       // Position given to the last message added to the end of the queue
+    private volatile boolean isClosed;
+
+    // Slow Consumer State
+    private volatile long backlogSince; // Time the backlog first went over the threshold, 0 if it is not over
+    private AtomicBoolean isCoalescing;
+
+    // Marks the end of the queue for a waiting writer
+    private final QueuedMessage CLOSED = new QueuedMessage(new OutgoingMessage("CLOSED"), 0);
+
+    /**
+     * OutboundQueue constructor
+     * @param capacity maximum number of queued messages
+     */
+    OutboundQueue(int capacity) {
+        this.messages = new LinkedBlockingDeque<>(capacity);
+        this.unwritten = new AtomicInteger(0);
+        this.positions = new AtomicLong(0);
+        this.isCoalescing = new AtomicBoolean(false);
+        isClosed = false;
+        backlogSince = 0;
+    }
+
+    /**
+     * Queues a message without waiting
+     * @param message message
+     * @return false if the queue is full or closed
+     */
+    boolean offer(OutgoingMessage message) {
+        if (isClosed) {
+            return false;
+        }
+        unwritten.incrementAndGet();
+        if (!messages.offerLast(new QueuedMessage(message, positions.incrementAndGet()))) {
+            unwritten.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues a message ahead of every other queued message without waiting
+     * @param message message
+     * @return false if the queue is full or closed
+     */
+    boolean offerFirst(OutgoingMessage message) {
+        if (isClosed) {
+            return false;
+        }
+        unwritten.incrementAndGet();
+        if (!messages.offerFirst(new QueuedMessage(message, 0))) {
+            unwritten.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the position of the message most recently added to the end of the queue, marking the messages queued
+     * so far
+     * @return position
+     */
+    long mark() {
+        return positions.get();
+    }
+
+    /**
+     * Removes the matching messages queued up to and including a mark. The scan stops at the first message queued
+     * after the mark, even if the writer has already taken every message before it, and messages the writer has
+     * taken are left alone.
+     * @param mark position returned by mark()
+     * @param isDroppable returns true for messages that should be removed
+     * @return number of messages removed
+     */
+    int removeUpTo(long mark, Predicate<String> isDroppable) {
+        int removed = 0;
+        for (QueuedMessage queued : messages) {
+            if (queued.getPosition() > mark) {
+                break;
+            }
+            if (queued != CLOSED && isDroppable.test(queued.getMessage().getMessage())
+                    && messages.removeFirstOccurrence(queued)) {
+                unwritten.decrementAndGet();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Waits for the next message to write
+     * @return message, or null once the queue has been closed
+     * @throws InterruptedException interrupted while waiting
+     */
+    OutgoingMessage take() throws InterruptedException {
+        QueuedMessage queued = messages.takeFirst();
+        return queued == CLOSED ? null : queued.getMessage();
+    }
+
+    /**
+     * Returns the next message to write without waiting
+     * @return message, or null if there is none
+     */
+    OutgoingMessage poll() {
+        QueuedMessage queued = messages.pollFirst();
+        return queued == null || queued == CLOSED ? null : queued.getMessage();
+    }
+
+    /**
+     * Marks the message last taken from the queue as written
+     */
+    void written() {
+        unwritten.decrementAndGet();
+    }
+
+    /**
+     * Returns true if any message is queued or still being written
+     * @return boolean
+     */
+    boolean hasUnwritten() {
+        return unwritten.get() > 0;
+    }
+
+    /**
+     * Returns the number of queued messages
+     * @return size
+     */
+    int size() {
+        return messages.size();
+    }
+
+    /**
+     * Returns the time the backlog first went over the slow consumer threshold
+     * @return epoch milliseconds, or 0 if the backlog is not over the threshold
+     */
+    long getBacklogSince() {
+        return backlogSince;
+    }
+
+    /**
+     * Records when the backlog went over the slow consumer threshold
+     * @param backlogSince epoch milliseconds, or 0 once the backlog is back under the threshold
+     */
+    void setBacklogSince(long backlogSince) {
+        this.backlogSince = backlogSince;
+    }
+
+    /**
+     * Marks the queue as being coalesced
+     * @return false if the queue is already being coalesced
+     */
+    boolean startCoalescing() {
+        return isCoalescing.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks the queue as no longer being coalesced
+     */
+    void finishCoalescing() {
+        isCoalescing.set(false);
+    }
+
+    /**
+     * Returns true once the queue has been closed
+     * @return boolean
+     */
+    boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Discards queued messages and releases a writer waiting on the queue
+     */
+    void close() {
+        isClosed = true;
+        messages.clear();
+        unwritten.set(0);
+        messages.offerFirst(CLOSED);
+    }
+}
@@ -0,0 +1,192 @@
+package server;
+import io.BinaryFrameHandler;
+import io.JSONHandler;
+import io.JSONHandlerException;
+import io.MessageProtocol;
+import io.OutgoingMessage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Connection between two server nodes of a cluster. Messages are written in the order they are sent by a dedicated
+ * writer, and incoming relayed drawings and states are handed to the cluster node. Messages are framed with a 4 byte
+ * length, as relayed board states do not fit in a writeUTF frame. The queue of unwritten messages is bounded: a
+ * message that does not fit is not sent, and its sender can ask to be called back once the queue has drained.
+ */
+class PeerConnection {
+
+    private Socket socket;
+    private ClusterNode clusterNode;
+    private JSONHandler jsonHandler;
+    private OutboundQueue outbound;
+    private ConcurrentLinkedQueue<Runnable> drainedCallbacks;   // Run once the queue has drained
+
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    private final String ERROR_STREAM = "Unable to maintain input/output streams from/to a cluster node.";
+    private final String ERROR_FRAME_LENGTH = "Received a frame of an invalid length from a cluster node: ";
+    private final String ERROR_CLOSE_SOCKET = "Unable to close the socket of a cluster node.";
+    // Messages queued for the other node, and the number it must drain to before a dropped board is sent again
+    private final int CAPACITY = 16384;
+    private final int DRAINED = CAPACITY / 4;
+
+    /**
+     * PeerConnection constructor
+     * @param socket socket connected to the other node
+     * @param clusterNode this node
+     */
+    PeerConnection(Socket socket, ClusterNode clusterNode) {
+        this.socket = socket;
+        this.clusterNode = clusterNode;
+        this.jsonHandler = new JSONHandler();
+        this.outbound = new OutboundQueue(CAPACITY);
+        this.drainedCallbacks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Starts the connection's reader and writer
+     * @param executor executor that runs the reader and writer
+     * @throws IOException unable to open the socket's streams
+     */
+    void start(Executor executor) throws IOException {
+        in = new DataInputStream(socket.getInputStream());
+        out = new DataOutputStream(socket.getOutputStream());
+        executor.execute(this::writeMessages);
+        executor.execute(this::readMessages);
+    }
+
+    /**
+     * Reads messages from the other node until the connection is lost
+     */
+    private void readMessages() {
+        try {
+            while (true) {
+                String input = readFrame();
+                try {
+                    String type = jsonHandler.processString(input, MessageProtocol.TYPE);
+                    String boardId = jsonHandler.processString(input, MessageProtocol.BOARD);
+                    clusterNode.received(this, type, boardId, jsonHandler.processString(input, type));
+                } catch (JSONHandlerException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            if (isConnected()) {
+                System.out.println(ERROR_STREAM);
+            }
+        }
+        close();
+        clusterNode.disconnected(this);
+    }
+
+    /**
+     * Reads the next length-prefixed message
+     * @return message
+     * @throws IOException unable to read the message, or its length is out of range
+     */
+    private String readFrame() throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > BinaryFrameHandler.MAX_FRAME_LENGTH) {
+            throw new IOException(ERROR_FRAME_LENGTH + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a message prefixed with its length
+     * @param message message
+     * @throws IOException unable to write the message
+     */
+    private void writeFrame(String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes queued messages to the other node in order until the connection is closed
+     */
+    private void writeMessages() {
+        try {
+            OutgoingMessage message;
+            while ((message = outbound.take()) != null) {
+                writeFrame(message.getMessage());
+                outbound.written();
+                if (!drainedCallbacks.isEmpty()) {
+                    runIfDrained();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(ERROR_STREAM);
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a drawing or state of a board for the other node
+     * @param type relay or relayed state
+     * @param boardId board id
+     * @param value canvas message or encoded state
+     * @return false if the queue is full or the connection is closed, in which case the message is not sent
+     */
+    boolean send(String type, String boardId, String value) {
+        String message = jsonHandler.createJSONString(MessageProtocol.TYPE, type, value, MessageProtocol.BOARD,
+                boardId);
+        return outbound.offer(new OutgoingMessage(message));
+    }
+
+    /**
+     * Runs a callback once the queue has drained enough for a board's whole state to be sent again, straight away
+     * if it already has. Callbacks are dropped if the connection is closed.
+     * @param callback callback, run on the connection's writer or the calling thread
+     */
+    void whenDrained(Runnable callback) {
+        drainedCallbacks.add(callback);
+        // The writer may have drained the queue before the callback was added
+        runIfDrained();
+    }
+
+    /**
+     * Runs the waiting drained callbacks, each once, if the queue has drained
+     */
+    private void runIfDrained() {
+        if (!isConnected() || outbound.size() > DRAINED) {
+            return;
+        }
+        Runnable callback;
+        while ((callback = drainedCallbacks.poll()) != null) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Returns true if the connection has not been closed
+     * @return boolean
+     */
+    boolean isConnected() {
+        return !outbound.isClosed();
+    }
+
+    /**
+     * Closes the connection, which also ends its reader and writer
+     */
+    void close() {
+        outbound.close();
+        drainedCallbacks.clear();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println(ERROR_CLOSE_SOCKET);
+        }
+    }
+}
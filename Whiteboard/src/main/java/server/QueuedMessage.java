@@ -0,0 +1,38 @@
+package server;
+import io.OutgoingMessage;
+
+/**
+ * A message in one connection's outbound queue, with the position it was queued at. Positions only grow as messages
+ * are added to the end of the queue, so they tell which messages were queued before a given point.
+ */
+class QueuedMessage {
+
+    private final OutgoingMessage message;
+    private final long position;
+
+    /**
+     * QueuedMessage constructor
+     * @param message message
+     * @param position position it was queued at, or 0 for a message put ahead of the queue
+     */
+    QueuedMessage(OutgoingMessage message, long position) {
+        this.message = message;
+        this.position = position;
+    }
+
+    /**
+     * Returns the message
+     * @return message
+     */
+    OutgoingMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the position the message was queued at
+     * @return position
+     */
+    long getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,132 @@
+package server;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Non-blocking transport that multiplexes every client connection over a small, fixed number of event loops
+ */
+class SelectorServer {
+
+    private BoardDirectory boards;
+    private ServerSocketChannel serverChannel;
+    private int portNo;
+    private volatile boolean isRunning;
+
+    // Event Loops
+    private EventLoop[] eventLoops;
+    private int nextEventLoop;
+    private ExecutorService blockingExecutor;
+    private Set<NioRequestHandler> handlers;
+
+    private final long SHUT_DOWN_TIMEOUT = 1000;
+    private final long FLUSH_POLL_INTERVAL = 10;
+    private final String ERROR_CLOSE_CHANNEL = "Unable to close the server channel.";
+
+    /**
+     * SelectorServer constructor
+     * @param portNo port number
+     * @param eventLoopCount number of event loop threads
+     * @param boards boards hosted by the server
+     * @param blockingExecutor executor for work that must not run on an event loop, such as join requests
+     */
+    SelectorServer(int portNo, int eventLoopCount, BoardDirectory boards,
+                   ExecutorService blockingExecutor) {
+        this.portNo = portNo;
+        this.boards = boards;
+        this.eventLoops = new EventLoop[eventLoopCount];
+        this.handlers = ConcurrentHashMap.newKeySet();
+        this.blockingExecutor = blockingExecutor;
+        nextEventLoop = 0;
+    }
+
+    /**
+     * Binds the server channel and hands accepted client channels to the event loops in turn
+     * @throws IOException unable to bind or accept from the server channel
+     */
+    void listen() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(portNo));
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop("event-loop-" + i);
+            eventLoops[i].start();
+        }
+        isRunning = true;
+        while (isRunning) {
+            SocketChannel clientChannel = serverChannel.accept();
+            clientChannel.configureBlocking(false);
+            clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            EventLoop eventLoop = eventLoops[nextEventLoop];
+            nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            NioRequestHandler handler = new NioRequestHandler(clientChannel, eventLoop, boards, this);
+            handlers.add(handler);
+            eventLoop.register(handler);
+        }
+    }
+
+    /**
+     * Waits briefly for queued frames to be written, then stops the event loops and closes all channels
+     */
+    void close() {
+        isRunning = false;
+        long deadline = System.currentTimeMillis() + SHUT_DOWN_TIMEOUT;
+        while (hasPendingWrites() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(FLUSH_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.shutDown(SHUT_DOWN_TIMEOUT);
+            }
+        }
+        for (NioRequestHandler handler : handlers) {
+            handler.closeChannel();
+        }
+        blockingExecutor.shutdownNow();
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                System.out.println(ERROR_CLOSE_CHANNEL);
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a handler whose channel has been closed
+     * @param handler request handler
+     */
+    void removeHandler(NioRequestHandler handler) {
+        handlers.remove(handler);
+    }
+
+    /**
+     * Returns the executor for work that must not run on an event loop, such as join requests
+     * @return executor
+     */
+    ExecutorService getBlockingExecutor() {
+        return blockingExecutor;
+    }
+
+    /**
+     * Returns true if any connection still has frames waiting to be written
+     * @return boolean
+     */
+    private boolean hasPendingWrites() {
+        for (NioRequestHandler handler : handlers) {
+            if (handler.getOutboundQueue().hasUnwritten()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
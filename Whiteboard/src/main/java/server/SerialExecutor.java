@@ -0,0 +1,50 @@
+package server;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time in the order they were submitted, borrowing a thread from a shared pool only while it has
+ * tasks. Each board has one, so a board's work stays in order while many boards share a fixed number of threads.
+ */
+class SerialExecutor implements Executor {
+
+    private Executor workerPool;
+    private ArrayDeque<Runnable> tasks;
+    private Runnable active;        // Null if no task of this executor is running or waiting on the pool
+
+    /**
+     * SerialExecutor constructor
+     * @param workerPool shared pool whose threads run the tasks
+     */
+    SerialExecutor(Executor workerPool) {
+        this.workerPool = workerPool;
+        this.tasks = new ArrayDeque<>();
+    }
+
+    /**
+     * Queues a task to run after every task submitted before it
+     * @param task task
+     */
+    public synchronized void execute(Runnable task) {
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * Hands the next queued task to the pool, if there is one
+     */
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+        if (active != null) {
+            workerPool.execute(active);
+        }
+    }
+}
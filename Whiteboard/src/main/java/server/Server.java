@@ -3,13 +3,19 @@ import java.io.IOException;
 import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import io.ThreadHandler;
 
 public class Server {
 
     // Server Info
     private ServerSocket serverSocket;
     private int portNo;
-    private ServerController serverController;
+    private String adminUsername;
+    private BoardDirectory boards;
+    private ServerOptions options;
+    private SelectorServer selectorServer;
+    private ExecutorService handlerExecutor;
 
     // Server Status
     private boolean hasValidPort;
@@ -23,15 +29,25 @@ public class Server {
     private final int PORT_NO_LOWER_LIMIT = 1024;
     private final int PORT_NO_UPPER_LIMIT = 65335;
     private final int REQUIRED_ARGS = 2;
+    private final String HEADLESS_PROPERTY = "java.awt.headless";
 
     // Error Messages
     private final String INVALID_PORT_NO = "Invalid port number entered. " +
             "Please input a port number between 1024 and 65335.";
     private final String INVALID_ARG_NO = "Insufficient arguments entered.\n" +
-            "Usage: java -jar ServerWhiteBoard.jar <port> <username>";
+            "Usage: java -jar ServerWhiteBoard.jar <port> <username> [--headless] [--transport=blocking|nio] " +
+            "[--event-loops=<count>] [--threads=platform|virtual] [--queue-capacity=<messages>] " +
+            "[--slow-consumer=coalesce|disconnect] [--backlog-threshold=<messages>] [--backlog-deadline=<ms>] " +
+            "[--batch-tick=<ms>] [--admission=manual|auto] [--auto-approve=<regex>] [--board-workers=<count>] " +
+            "[--max-boards=<count>] [--board-idle-timeout=<ms>] [--snapshot-workers=<count>] " +
+            "[--snapshot-format=png|raw|rle] [--png-level=<0-9>] [--heartbeat-interval=<ms>] [--idle-timeout=<ms>] " +
+            "[--op-log=<ops>] [--resume-window=<ms>] [--cluster-port=<port>] [--cluster-leader=<host>:<port>]";
+    private final String INVALID_OPTION = "Invalid option entered: ";
+    private final String INVALID_IDLE_TIMEOUT = "The idle timeout must be longer than the heartbeat interval.";
     private final String ERROR_CLOSE_SOCKET = "Unable to close the server socket.";
     private final String ERROR_BIND = "Server port number is in use, please try another.";
     private final String ERROR_CREATE_SOCKET = "Unable to create a server socket.";
+    private final String ERROR_CLUSTER = "Unable to join the cluster, please check the cluster port or leader address.";
 
     // Status Messages
     private final String PROGRAM_RUNNING = "Server is running...";
@@ -56,10 +72,18 @@ public class Server {
     private void runProgram(String[] args) {
         isRunning = true;
         serverSocket = null;
-        serverController = new ServerController(this);
+        options = new ServerOptions();
         scanCommandArguments(args);
         if (hasValidPort) {
             System.out.println(PROGRAM_RUNNING);
+            if (options.isHeadless()) {
+                System.setProperty(HEADLESS_PROPERTY, "true");
+            }
+            boards = new BoardDirectory(this, options, adminUsername);
+            if (options.isClustered()) {
+                startCluster();
+            }
+            handlerExecutor = new ThreadHandler().createExecutor(options.getThreadMode());
             listen();
         } else {
             exitProgram();
@@ -72,9 +96,20 @@ public class Server {
      */
     private void scanCommandArguments(String[] args) {
         System.out.println(ARG_VERIFY);
-        if (args.length == REQUIRED_ARGS) {
+        if (args.length >= REQUIRED_ARGS) {
+            for (int i = REQUIRED_ARGS; i < args.length; i++) {
+                if (!options.parse(args[i])) {
+                    System.out.println(INVALID_OPTION + args[i]);
+                    System.out.println(INVALID_ARG_NO);
+                    exitProgram();
+                }
+            }
+            if (!options.isConsistent()) {
+                System.out.println(INVALID_IDLE_TIMEOUT);
+                exitProgram();
+            }
             validatePort(Integer.parseInt(args[PORT_NO_INDEX]));
-            serverController.createAdmin(args[USERNAME_INDEX]);
+            adminUsername = args[USERNAME_INDEX];
         } else {
             System.out.println(INVALID_ARG_NO);
             exitProgram();
@@ -98,34 +133,71 @@ public class Server {
     }
 
     /**
-     * Creates server socket and listens for incoming client connections
+     * Connects this server to its cluster's leader, or lets other nodes connect to it if it is the leader
+     */
+    private void startCluster() {
+        try {
+            boards.startCluster();
+        } catch (IOException e) {
+            System.out.println(ERROR_CLUSTER);
+            exitProgram();
+        }
+    }
+
+    /**
+     * Listens for incoming client connections using the selected transport
      */
     private void listen() {
         try {
-            serverSocket = new ServerSocket(portNo);
-            System.out.println(SERVER_LISTENING + portNo + "...");
-            while (isRunning) {
-                Socket clientSocket = serverSocket.accept();
-                // Creates a thread for every incoming client connection
-                Thread t = new Thread((new ServerRequestHandler(clientSocket, serverController)));
-                t.start();
+            if (options.isNioTransport()) {
+                listenSelector();
+            } else {
+                listenBlocking();
             }
         } catch (BindException e) {
             System.out.println(ERROR_BIND);
             exitProgram();
         } catch (IOException e) {
-            if (!serverSocket.isClosed()) {
+            if (isRunning) {
                 System.out.println(ERROR_CREATE_SOCKET);
                 exitProgram();
             }
         }
     }
 
+    /**
+     * Creates server socket and serves each incoming client connection on its own thread
+     * @throws IOException unable to create or accept from the server socket
+     */
+    private void listenBlocking() throws IOException {
+        serverSocket = new ServerSocket(portNo);
+        System.out.println(SERVER_LISTENING + portNo + "...");
+        while (isRunning) {
+            Socket clientSocket = serverSocket.accept();
+            // Runs every incoming client connection on its own (platform or virtual) thread
+            handlerExecutor.execute(new ServerRequestHandler(clientSocket, boards, handlerExecutor));
+        }
+    }
+
+    /**
+     * Serves all incoming client connections from a fixed number of selector event loops
+     * @throws IOException unable to bind or accept from the server channel
+     */
+    private void listenSelector() throws IOException {
+        selectorServer = new SelectorServer(portNo, options.getEventLoops(), boards, handlerExecutor);
+        System.out.println(SERVER_LISTENING + portNo + " (" + options.getEventLoops() + " event loops)...");
+        selectorServer.listen();
+    }
+
     /**
      * Close the server socket and exit gracefully
      */
     void exitProgram() {
         isRunning = false;
+        if (selectorServer != null) {
+            selectorServer.close();
+            System.out.println(SOCKET_CLOSING);
+        }
         if (serverSocket != null) {
             try {
                 serverSocket.close();
@@ -1,86 +1,381 @@
 package server;
+import board.Board;
 import gui.AdminGUI;
 import io.*;
-import java.awt.*;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+/**
+ * Controls a single board hosted by the server: its users, join requests and drawings. Drawings and admissions run
+ * in order on the board's own executor, which borrows threads from the pool shared by all boards.
+ */
 public class ServerController {
 
-    private Server server;
-    private AdminGUI adminGUI;
-    private ArrayList<User> userList;   // List of all connected users
+    private BoardDirectory boards;
+    private String boardId;
+    private Executor boardExecutor;
+    private ServerOptions options;
+    private SlowConsumerPolicy slowConsumerPolicy;
+    private CanvasBatcher canvasBatcher;    // Null if drawings are sent as they arrive
+    private AdminGUI adminGUI;          // Null if the board is not shown to the admin
+    private Board board;                // Authoritative state of the whiteboard
+    private UserRegistry userRegistry;  // All connected users
+    private AdmissionQueue admissionQueue;
     private JSONHandler jsonHandler;
+    private FrameHandler frameHandler;  // Measures drawings against the JSON frame limit
+    private CopyOnWriteArrayList<PeerConnection> peers;     // Cluster followers the board's drawings are relayed to
+    private OpLog opLog;                // Recent drawings, replayed to resuming clients
+    private SnapshotEncoder snapshotEncoder;
+    private String encodedState;        // Whole board encoded for cluster followers, at encodedStateSeq
+    private long encodedStateSeq;
+    private SessionStore sessions;      // Lost sessions that can still be resumed
+    private long seq;                   // Sequence number of the last drawing or state change (board's executor)
+    private int pendingSnapshots;       // Snapshots being encoded for clients (board's executor)
+    private volatile long idleSince;    // Time the board was first seen unused, 0 if in use
+    private volatile boolean isRemoved; // Board has been removed from the directory for being unused
 
     private final String ERROR_CLEAR = "Unable to clear the session's canvas";
+    private final String ERROR_LOAD = "Unable to load the canvas relayed by another cluster node";
+    private final String FOLLOWER_BEHIND = "A cluster node is not keeping up with board %s, it will be sent the " +
+            "board's state once it has caught up.";
+    private final int BOARD_WIDTH = 550;
+    private final int BOARD_HEIGHT = 440;
+    private final String ERROR_DRAWING_LENGTH = "Drawing is too large to be sent to clients, it was dropped.";
+
+    // Room left in a frame for the canvas message or batch around a drawing, and its sequence number
+    private final int MAX_DRAWING_LENGTH = FrameHandler.MAX_FRAME_LENGTH - 512;
 
     /**
      * ServerController constructor
-     * @param server server
+     * @param boards boards hosted by the server
+     * @param boardId id of this board
+     * @param hasAdminGUI true if the board is shown in the admin GUI
      */
-    public ServerController(Server server) {
-        this.server = server;
-        userList = new ArrayList<>();
+    ServerController(BoardDirectory boards, String boardId, boolean hasAdminGUI) {
+        this.boards = boards;
+        this.boardId = boardId;
+        this.options = boards.getOptions();
+        this.boardExecutor = boards.createBoardExecutor();
+        this.slowConsumerPolicy = new SlowConsumerPolicy(this, boardExecutor, options.getSlowConsumerPolicy(),
+                options.getBacklogThreshold(), options.getBacklogDeadline());
+        if (options.getBatchTick() > 0) {
+            this.canvasBatcher = new CanvasBatcher(this, options.getBatchTick(), boards.getTimer(), boardExecutor);
+        }
+        if (hasAdminGUI) {
+            adminGUI = new AdminGUI(this);
+        }
+        userRegistry = new UserRegistry();
+        board = new Board(BOARD_WIDTH, BOARD_HEIGHT);
+        admissionQueue = new AdmissionQueue(options.getAdmissionPolicy(hasAdminGUI), options.getAutoApprovePattern());
         jsonHandler =  new JSONHandler();
+        frameHandler = new FrameHandler();
+        peers = new CopyOnWriteArrayList<>();
+        opLog = new OpLog(options.getOpLogCapacity());
+        snapshotEncoder = new SnapshotEncoder(options.getSnapshotFormat(), options.getPngLevel());
+        sessions = new SessionStore(boards.getTimer(), options.getResumeWindow());
+        seq = 0;
     }
 
     /**
-     * Adds the admin to the user list and starts the admin GUI
+     * Adds the admin to the user list and starts the admin GUI, if the board is shown to the admin
      * @param username admin username
      */
     public void createAdmin(String username) {
         User user = new User(username);
         user.setAdmin();
-        userList.add(user);
-        initializeGUI();
+        userRegistry.add(user);
+        if (adminGUI != null) {
+            adminGUI.initialize();
+        }
     }
 
     /**
-     * Starts the admin GUI
+     * Admits a new user straight away if the admission policy allows it, otherwise queues the join request for the
+     * admin. The client's request handler does not wait for the admin's response.
+     * @param username client username
+     * @param serverRequestHandler serverRequestHandler
      */
-    private void initializeGUI() {
-        adminGUI = new AdminGUI(this);
-        adminGUI.initialize();
+    void joinRequest(String username, ServerRequestHandler serverRequestHandler) {
+        User user = new User(username, serverRequestHandler);
+        if (admissionQueue.isAutoApproved(username)) {
+            admit(List.of(user));
+        } else if (adminGUI == null) {
+            // No admin present to approve the request
+            serverRequestHandler.rejectRequest();
+        } else if (admissionQueue.add(user)) {
+            updateAdminJoinRequests();
+        } else {
+            // A request with the same username is already waiting
+            serverRequestHandler.invalidRequest();
+        }
     }
 
     /**
-     * Display a new user join request to the admin GUI and sends the response back to the
-     * client via their request handler thread
-     * @param username client username
-     * @param serverRequestHandler serverRequestHandler
+     * Adds approved users to the user list and sends each of them a snapshot of the board, followed by the drawings
+     * applied while it was being encoded. The users are added on the board's executor right after those drawings are
+     * taken, so they receive every later drawing as it is sent.
+     * @param users approved users
      */
-    void joinRequest(String username, ServerRequestHandler serverRequestHandler) {
-        boolean isAllowed = adminGUI.displayJoinRequest(username);
-        if (isAllowed && isValidUsername(username)) {
-            // Add client to user list
-            addUser(username, serverRequestHandler);
-            try {
-                serverRequestHandler.acceptRequest(username, getState());
-            } catch (ImageHandlerException e) {
-                System.out.println(e.getMessage());
+    private void admit(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        boardExecutor.execute(() -> {
+            if (isRemoved) {
+                // Board was removed before the request was taken up, the client can join again
+                for (User user : users) {
+                    user.getServerRequestHandler().rejectRequest();
+                }
+                return;
             }
-        } else {
+            admitUsers(users);
+        });
+    }
+
+    /**
+     * Adds approved users to the user list once a snapshot of the board has been encoded for them. Called on the
+     * board's executor.
+     * @param users approved users
+     */
+    private void admitUsers(List<User> users) {
+        sendSnapshot(-1, (state, later) -> {
+            ArrayList<User> admitted = new ArrayList<>();
+            for (User user : users) {
+                if (userRegistry.add(user)) {
+                    admitted.add(user);
+                } else {
+                    // Username was taken while the request was waiting
+                    user.getServerRequestHandler().invalidRequest();
+                }
+            }
+            refreshUserList();
+            // Users approved together share the frames of their snapshot
+            List<OutgoingMessage> sharedState = share(state);
+            List<OutgoingMessage> sharedLater = share(later);
+            for (User user : admitted) {
+                ServerRequestHandler serverRequestHandler = user.getServerRequestHandler();
+                serverRequestHandler.acceptRequest(user.getUsername(), sharedState, sessions.createToken());
+                for (OutgoingMessage message : sharedLater) {
+                    serverRequestHandler.sendMessage(message);
+                }
+            }
+        }, () -> {
+            for (User user : users) {
+                user.getServerRequestHandler().rejectRequest();
+            }
+        });
+    }
+
+    /**
+     * Resumes the session of a client whose connection was lost, without asking the admin again. The client is sent
+     * the drawings it missed, or the board's tiles changed since its last drawing if too many were missed or they
+     * are no longer logged.
+     * @param token session token given to the client when it joined
+     * @param lastSeq sequence number of the last drawing the client applied
+     * @param serverRequestHandler serverRequestHandler of the client's new connection
+     */
+    void resumeRequest(String token, long lastSeq, ServerRequestHandler serverRequestHandler) {
+        boardExecutor.execute(() -> {
+            if (canvasBatcher != null) {
+                // Drawings already on the board go to the existing users, and are replayed to this one
+                canvasBatcher.flush();
+            }
+            String username = isRemoved ? null : sessions.resume(token);
+            if (username == null) {
+                // Session has expired, or the board was removed
+                serverRequestHandler.rejectRequest();
+                return;
+            }
+            List<String> missed = opLog.since(lastSeq);
+            if (missed != null && missed.size() <= options.getBacklogThreshold()) {
+                resumeUser(username, token, missed, serverRequestHandler);
+                return;
+            }
+            // Only the tiles changed since the client's last drawing
+            sendSnapshot(lastSeq, (state, later) -> {
+                ArrayList<String> messages = new ArrayList<>(state);
+                messages.addAll(later);
+                resumeUser(username, token, messages, serverRequestHandler);
+            }, serverRequestHandler::rejectRequest);
+        });
+    }
+
+    /**
+     * Adds a resuming client back to the user list and sends it what it missed. Called on the board's executor.
+     * @param username client username
+     * @param token session token
+     * @param missed messages that bring the client up to date
+     * @param serverRequestHandler serverRequestHandler of the client's new connection
+     */
+    private void resumeUser(String username, String token, List<String> missed,
+                            ServerRequestHandler serverRequestHandler) {
+        User user = new User(username, serverRequestHandler);
+        if (!userRegistry.add(user)) {
+            // Username has been taken since the session was lost
             serverRequestHandler.rejectRequest();
+            return;
         }
+        serverRequestHandler.acceptResume(username, token, missed);
+        refreshUserList();
+    }
+
+    /**
+     * Encodes a snapshot of the board in the background and hands it over on the board's executor, together with the
+     * drawings applied after it, so a client that applies both ends up exactly at the board's current state. Called
+     * on the board's executor; the snapshot is encoded from a copy of the board's pixels taken at the current
+     * sequence number, so drawings keep being applied while it is encoded.
+     * @param since sequence number of the last drawing the client has, or -1 for the whole board
+     * @param callback receives the snapshot's messages and the drawings applied after it, on the board's executor
+     * @param onFailure called on the board's executor if the snapshot cannot be encoded
+     */
+    private void sendSnapshot(long since, BiConsumer<List<String>, List<String>> callback, Runnable onFailure) {
+        long snapshotSeq = seq;
+        pendingSnapshots++;
+        snapshotEncoder.encodeAsync(board, board.getChangedRegions(since > seq ? -1 : since), seq,
+                boards.getSnapshotPool()).whenComplete((encoded, e) -> boardExecutor.execute(() -> {
+            pendingSnapshots--;
+            if (e != null) {
+                System.out.println(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                onFailure.run();
+                return;
+            }
+            if (canvasBatcher != null) {
+                // Drawings already on the board are replayed after the snapshot, not sent twice
+                canvasBatcher.flush();
+            }
+            List<String> state = encoded;
+            List<String> later = opLog.since(snapshotSeq);
+            if (later == null || later.size() > options.getBacklogThreshold()) {
+                // The board's state was replaced, or too much was drawn, while the snapshot was encoded. Take the
+                // current one instead, which only encodes the tiles changed since.
+                try {
+                    state = createStateMessages(since);
+                    later = Collections.emptyList();
+                } catch (ImageHandlerException ex) {
+                    System.out.println(ex.getMessage());
+                    onFailure.run();
+                    return;
+                }
+            }
+            callback.accept(state, later);
+        }));
     }
 
     /**
      * Adds the client (as a user) to the user list and updates connected users
      * @param username client username
      * @param serverRequestHandler serverRequestHandler
+     * @return false if the username has already been taken
      */
-    public void addUser(String username, ServerRequestHandler serverRequestHandler) {
-        userList.add(new User(username, serverRequestHandler));
+    public boolean addUser(String username, ServerRequestHandler serverRequestHandler) {
+        if (!userRegistry.add(new User(username, serverRequestHandler))) {
+            return false;
+        }
         refreshUserList();
+        return true;
+    }
+
+    /**
+     * Approves the waiting join requests of the given usernames
+     * @param usernames usernames
+     */
+    public void approveJoinRequests(List<String> usernames) {
+        admit(admissionQueue.remove(usernames));
+        updateAdminJoinRequests();
+    }
+
+    /**
+     * Approves every waiting join request
+     */
+    public void approveAllJoinRequests() {
+        admit(admissionQueue.removeAll());
+        updateAdminJoinRequests();
+    }
+
+    /**
+     * Approves the waiting join requests whose username matches a regular expression
+     * @param regex username pattern
+     * @throws PatternSyntaxException invalid regular expression
+     */
+    public void approveMatchingJoinRequests(String regex) throws PatternSyntaxException {
+        admit(admissionQueue.removeMatching(Pattern.compile(regex)));
+        updateAdminJoinRequests();
+    }
+
+    /**
+     * Rejects the waiting join requests of the given usernames
+     * @param usernames usernames
+     */
+    public void rejectJoinRequests(List<String> usernames) {
+        for (User user : admissionQueue.remove(usernames)) {
+            user.getServerRequestHandler().rejectRequest();
+        }
+        updateAdminJoinRequests();
     }
 
     /**
-     * Removes the client from the user list and updates connected users
+     * Rejects every waiting join request
+     */
+    public void rejectAllJoinRequests() {
+        for (User user : admissionQueue.removeAll()) {
+            user.getServerRequestHandler().rejectRequest();
+        }
+        updateAdminJoinRequests();
+    }
+
+    /**
+     * Drops the waiting join request of a client that has disconnected
+     * @param serverRequestHandler serverRequestHandler
+     */
+    void cancelJoinRequest(ServerRequestHandler serverRequestHandler) {
+        if (admissionQueue.cancel(serverRequestHandler)) {
+            updateAdminJoinRequests();
+        }
+    }
+
+    /**
+     * Returns the usernames of the join requests waiting for the admin
+     * @return username list
+     */
+    public ArrayList<String> getJoinRequests() {
+        return admissionQueue.getUsernames();
+    }
+
+    /**
+     * Removes the client from the user list and updates connected users. Only the user joined through the given
+     * request handler is removed, not a later user who has since taken the same username.
      * @param username client username
+     * @param serverRequestHandler serverRequestHandler
+     * @return false if the user had already been removed
      */
-    public void removeUser(String username) {
-        userList.removeIf(user -> user.getUsername().equals(username) && !user.isAdmin());
-        refreshUserList();
+    public boolean removeUser(String username, ServerRequestHandler serverRequestHandler) {
+        User user = userRegistry.get(username);
+        if (user != null && !user.isAdmin() && user.getServerRequestHandler() == serverRequestHandler
+                && userRegistry.remove(user)) {
+            refreshUserList();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a client whose connection was lost and keeps their session, so they can resume it for a while
+     * @param username client username
+     * @param serverRequestHandler serverRequestHandler
+     * @param token client's session token
+     */
+    void disconnectUser(String username, ServerRequestHandler serverRequestHandler, String token) {
+        if (removeUser(username, serverRequestHandler) && token != null) {
+            sessions.suspend(token, username);
+        }
     }
 
     /**
@@ -89,172 +384,344 @@ public class ServerController {
      * @throws ImageHandlerException error encoding the image
      */
     String getState() throws ImageHandlerException {
-        BufferedImage image = adminGUI.getCanvas().getImage();
-        ImageHandler imageHandler = new ImageHandler();
-        return imageHandler.getImageString(image);
+        if (encodedState == null || encodedStateSeq != seq) {
+            encodedState = new ImageHandler().getImageString(board.copyImage());
+            encodedStateSeq = seq;
+        }
+        return encodedState;
     }
 
     /**
-     * Sends canvas changes to all users
-     * @param update string containing canvas changes
+     * Wraps messages that are about to be sent to several clients, so each is only encoded once per codec
+     * @param messages messages
+     * @return shared messages
      */
-    public void updateServer(String update) {
-        for (User user: userList) {
-            if (user.isAdmin()) {
-                // Admin
-                process(update);
-            } else if (user.isPermitted()){
-                // Client User
-                user.getServerRequestHandler().sendMessage(update);
-            }
+    private List<OutgoingMessage> share(List<String> messages) {
+        ArrayList<OutgoingMessage> shared = new ArrayList<>(messages.size());
+        for (String message : messages) {
+            shared.add(new OutgoingMessage(message));
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the messages of a snapshot of the board's tiles changed after a sequence number, the last of which
+     * carries the sequence number the snapshot brings a client up to. Called on the board's executor, so the state
+     * and sequence number match.
+     * @param since sequence number of the last drawing the client has, or -1 for the whole board
+     * @return state chunk messages followed by the state message
+     * @throws ImageHandlerException error encoding the image
+     */
+    List<String> createStateMessages(long since) throws ImageHandlerException {
+        if (since > seq) {
+            // Not a state of this board
+            since = -1;
         }
+        return snapshotEncoder.encode(board, board.getChangedRegions(since), seq);
     }
 
     /**
-     * Process canvas changes and updates the admin GUI
-     * @param input string containing canvas changes
+     * Sends the drawings still waiting to be batched to all clients (board's executor)
      */
-    private void process(String input) {
-        try {
-            String type = jsonHandler.processString(input, MessageProtocol.TYPE);
-            if (type.equals(MessageProtocol.CANVAS)) {
-                processDrawing(input);
+    void flushDrawings() {
+        if (canvasBatcher != null) {
+            canvasBatcher.flush();
+        }
+    }
+
+    /**
+     * Sends a client the board's tiles changed since the state it has, on request
+     * @param serverRequestHandler serverRequestHandler
+     * @param since sequence number of the last drawing the client has, or -1 for the whole board
+     */
+    void refreshClient(ServerRequestHandler serverRequestHandler, long since) {
+        boardExecutor.execute(() -> sendSnapshot(since, (state, later) -> {
+            for (String message : state) {
+                serverRequestHandler.sendMessage(message);
+            }
+            for (String message : later) {
+                serverRequestHandler.sendMessage(message);
             }
-        } catch (JSONHandlerException e) {
-            System.out.println(e.getMessage());
+        }, () -> {}));
+    }
+
+    /**
+     * Sends an update to all clients, after the drawings still waiting to be batched. Messages are queued on each
+     * client's connection, so a slow client does not hold up the others.
+     * @param update update message
+     */
+    public void updateServer(String update) {
+        if (canvasBatcher != null) {
+            // Send drawings made before this update first
+            canvasBatcher.flush();
         }
+        broadcast(update);
     }
 
     /**
-     * Retrieves the type of drawing and its information
-     * @param input string containing canvas changes
+     * Applies a drawing made by a user of this server. On a cluster follower the drawing is forwarded to the leader
+     * instead, which puts it in order with the other nodes' drawings and relays it back.
+     * @param update string containing canvas changes
      */
-    private void processDrawing(String input) {
-        try {
-            String drawingJSON = jsonHandler.processDrawing(input, MessageProtocol.CANVAS);
-            String drawingType = jsonHandler.processString(drawingJSON, MessageProtocol.TYPE);
-            updateAdminCanvas(drawingType, drawingJSON);
-        } catch (JSONHandlerException e) {
-            System.out.println(e.getMessage());
+    public void updateCanvas(String update) {
+        ClusterNode clusterNode = boards.getClusterNode();
+        if (clusterNode != null && clusterNode.isFollower()) {
+            clusterNode.forward(MessageProtocol.RELAY, boardId, update);
+            return;
         }
+        applyCanvas(update);
     }
 
     /**
-     * Process and apply new drawings to admin canvas
-     * @param drawingType type of drawing
-     * @param drawingJSON JSON string containing drawing information
-     * @throws JSONHandlerException error parsing JSON string
-     */
-    private void updateAdminCanvas(String drawingType, String drawingJSON) throws JSONHandlerException {
-        int x;
-        int y;
-        int width;
-        int height;
-        int colorRGB = jsonHandler.processInt(drawingJSON, MessageProtocol.COLOR);
-        Color color = new Color(colorRGB);
-        switch (drawingType) {
-            case MessageProtocol.LINE:
-
-                int x1 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X1);
-                int y1 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y1);
-                int x2 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X2);
-                int y2 = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y2);
-                adminGUI.getCanvas().updateCanvas(drawingType, x1, y1, x2, y2, color);
-                break;
-
-            case MessageProtocol.TEXT_BOX:
-
-                String text = jsonHandler.processString(drawingJSON, MessageProtocol.TEXT);
-                x = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X);
-                y = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y);
-                adminGUI.getCanvas().updateCanvas(drawingType, text, x, y, color);
-                break;
-
-            case MessageProtocol.ERASER:
-
-                x = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X);
-                y = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y);
-                width = jsonHandler.processInt(drawingJSON, MessageProtocol.WIDTH);
-                height = jsonHandler.processInt(drawingJSON, MessageProtocol.HEIGHT);
-                adminGUI.getCanvas().updateCanvas(drawingType, x, y, width, height, Color.WHITE);
-                break;
-
-            default:
-
-                // Rectangle, Circle, Oval
-                x = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_X);
-                y = jsonHandler.processInt(drawingJSON, MessageProtocol.POS_Y);
-                width = jsonHandler.processInt(drawingJSON, MessageProtocol.WIDTH);
-                height = jsonHandler.processInt(drawingJSON, MessageProtocol.HEIGHT);
-                adminGUI.getCanvas().updateCanvas(drawingType, x, y, width, height, color);
-                break;
+     * Applies a drawing to the board, relays it to the cluster's followers and sends it to all clients, collected
+     * into per-tick batches if enabled. The drawing is parsed once, and a drawing that cannot be parsed, or is too
+     * large for a JSON client's frame, is dropped before it is given a sequence number. Everything sent on is written
+     * from the parsed drawing, so no field sent by the client other than the drawing's own is passed on. Drawings are
+     * applied in the order they arrive, on the board's executor.
+     * @param update string containing canvas changes
+     */
+    void applyCanvas(String update) {
+        boardExecutor.execute(() -> {
+            DrawingOp drawing;
+            try {
+                drawing = jsonHandler.processDrawingOp(update, MessageProtocol.CANVAS);
+            } catch (JSONHandlerException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            String drawingJSON = drawing.toJSONString();
+            if (frameHandler.encodedLength(drawingJSON) > MAX_DRAWING_LENGTH) {
+                // Would not fit in a JSON client's frame once sequenced or batched
+                System.out.println(ERROR_DRAWING_LENGTH);
+                return;
+            }
+            relay(MessageProtocol.RELAY, jsonHandler.createJSONMessage(MessageProtocol.TYPE, MessageProtocol.CANVAS,
+                    drawingJSON));
+            seq++;
+            board.setVersion(seq);
+            String op = jsonHandler.createJSONMessage(MessageProtocol.TYPE, MessageProtocol.CANVAS, drawingJSON,
+                    MessageProtocol.SEQ, seq);
+            opLog.add(seq, op);
+            updateAdminCanvas(drawing);
+            if (canvasBatcher == null) {
+                broadcast(op);
+            } else {
+                canvasBatcher.add(drawingJSON, seq);
+            }
+        });
+    }
+
+    /**
+     * Sends a message to all permitted clients (not the admin). The message is encoded at most once per codec, and
+     * the same frame is written to every client that uses that codec.
+     * @param message message
+     */
+    void broadcast(String message) {
+        OutgoingMessage shared = new OutgoingMessage(message);
+        for (User user: userRegistry.snapshot()) {
+            if (!user.isAdmin() && user.isPermitted()) {
+                user.getServerRequestHandler().sendMessage(shared);
+            }
         }
     }
 
+    /**
+     * Apply a new drawing to the board, then repaints the admin canvas if there is one
+     * @param drawing drawing
+     */
+    private void updateAdminCanvas(DrawingOp drawing) {
+        repaintAdminCanvas(board.draw(drawing));
+    }
+
     /**
      * Boots a specific user and sends a disconnect message to the user
      * @param username username
      */
     public void bootUser(String username) {
-        for (User user: userList) {
-            if (user.getUsername().equals(username)) {
-                String update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.DISCONNECT,
-                        MessageProtocol.DISCONNECT);
-                user.getServerRequestHandler().sendMessage(update);
-            }
+        User user = userRegistry.get(username);
+        if (user != null && !user.isAdmin()) {
+            String update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.DISCONNECT,
+                    MessageProtocol.DISCONNECT);
+            user.getServerRequestHandler().sendMessage(update);
+            removeUser(username, user.getServerRequestHandler());
         }
-        removeUser(username);
     }
 
     /**
      * Boots all users (except admin) and sends a disconnect message to the users
      */
     public void bootAll() {
-        ArrayList<User> removedUsers = new ArrayList<>();
-        for (User user: userList) {
-            if (!user.isAdmin()) {
-                String update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.DISCONNECT,
-                        MessageProtocol.DISCONNECT);
-                user.getServerRequestHandler().sendMessage(update);
-                removedUsers.add(user);
+        String update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.DISCONNECT,
+                MessageProtocol.DISCONNECT);
+        for (User user: userRegistry.removeClients()) {
+            user.getServerRequestHandler().sendMessage(update);
+        }
+        updateAdminUserList();
+    }
+
+    /**
+     * Clears the board for the admin and updates all users with it
+     */
+    public void clearBoard() {
+        BufferedImage image = board.getImage();
+        openBoard(new Board(image.getWidth(), image.getHeight()).getImage());
+    }
+
+    /**
+     * Draws an image opened by the admin over the board and updates all users with it. On a cluster follower the
+     * resulting board is forwarded to the leader, which relays it back to every node in order with the drawings.
+     * @param image opened image
+     */
+    public void openBoard(BufferedImage image) {
+        ClusterNode clusterNode = boards.getClusterNode();
+        boardExecutor.execute(() -> {
+            try {
+                if (clusterNode != null && clusterNode.isFollower()) {
+                    // The board only changes once the leader has put the change in order
+                    Board opened = new Board(board.getImage().getWidth(), board.getImage().getHeight());
+                    opened.load(board.copyImage());
+                    opened.load(image);
+                    clusterNode.forward(MessageProtocol.RELAY_STATE, boardId,
+                            new ImageHandler().getImageString(opened.getImage()));
+                } else {
+                    applyState(image, null);
+                }
+            } catch (ImageHandlerException | InvalidFormatException e) {
+                System.out.println(ERROR_CLEAR);
             }
+        });
+    }
+
+    /**
+     * Replaces the board with a state relayed by another cluster node and updates all users with it
+     * @param state encoded board image
+     */
+    void loadState(String state) {
+        boardExecutor.execute(() -> {
+            try {
+                applyState(new ImageHandler().convertImageString(state), state);
+            } catch (ImageHandlerException | InvalidFormatException e) {
+                System.out.println(ERROR_LOAD);
+            }
+        });
+    }
+
+    /**
+     * Draws an image over the board, relays the board's state to the cluster's followers and sends users the tiles
+     * that changed. The change cannot be replayed as drawings, so the op log starts over from it. Runs on the board's
+     * executor.
+     * @param image image
+     * @param state encoded board image relayed by the leader, or null to encode it for the followers
+     * @throws ImageHandlerException error encoding the board
+     * @throws InvalidFormatException image could not be drawn
+     */
+    private void applyState(BufferedImage image, String state) throws ImageHandlerException, InvalidFormatException {
+        seq++;
+        board.setVersion(seq);
+        board.load(image);
+        repaintAdminCanvas();
+        opLog.reset(seq);
+        if (!peers.isEmpty()) {
+            relay(MessageProtocol.RELAY_STATE, state == null ? getState() : state);
+        }
+        // Users have every change up to the previous one
+        for (String message : createStateMessages(seq - 1)) {
+            updateServer(message);
         }
-        userList.removeAll(removedUsers);
-        adminGUI.updateUserList();
     }
 
     /**
-     * Updates all users with a blank canvas (done by admin)
+     * Subscribes a cluster follower to this board, starting with the board's current state. Runs on the board's
+     * executor, so the follower receives every drawing applied after that state. If the follower's queue is full, it
+     * is subscribed once the queue has drained.
+     * @param peer connection to the follower
+     */
+    void addPeer(PeerConnection peer) {
+        boardExecutor.execute(() -> {
+            try {
+                if (peer.send(MessageProtocol.RELAY_STATE, boardId, getState())) {
+                    peers.add(peer);
+                } else if (peer.isConnected()) {
+                    peer.whenDrained(() -> addPeer(peer));
+                }
+            } catch (ImageHandlerException e) {
+                System.out.println(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Unsubscribes a cluster follower from this board
+     * @param peer connection to the follower
+     */
+    void removePeer(PeerConnection peer) {
+        peers.remove(peer);
+    }
+
+    /**
+     * Sends a drawing or state of this board to every subscribed cluster follower. A follower that is not keeping
+     * up misses the message, so it is unsubscribed and subscribed again, with the board's state at that point, once
+     * its queue has drained.
+     * @param type relay or relayed state
+     * @param value canvas message or encoded state
      */
-    public void refreshState() {
-        try {
-            String update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.STATE,
-                    getState());
-            updateServer(update);
-        } catch (ImageHandlerException e) {
-            System.out.println(ERROR_CLEAR);
+    private void relay(String type, String value) {
+        for (PeerConnection peer : peers) {
+            if (!peer.send(type, boardId, value) && peers.remove(peer) && peer.isConnected()) {
+                System.out.println(String.format(FOLLOWER_BEHIND, boardId));
+                peer.whenDrained(() -> addPeer(peer));
+            }
         }
     }
 
+    /**
+     * Removes the board from the directory once it has had no users, join requests, resumable sessions or snapshots
+     * being encoded for the given time. The check runs on the board's executor, so no admission is in progress, and
+     * requests that reach the board after it is removed are rejected so the client can join a new board of that id.
+     * @param timeout milliseconds the board must stay unused
+     */
+    void removeIfUnused(long timeout) {
+        boardExecutor.execute(() -> {
+            if (isRemoved) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (userRegistry.snapshot().size() > 1 || !admissionQueue.isEmpty() || !sessions.isEmpty()
+                    || pendingSnapshots > 0) {
+                idleSince = 0;
+                return;
+            }
+            if (idleSince == 0) {
+                idleSince = now;
+            }
+            if (now - idleSince >= timeout) {
+                isRemoved = true;
+                boards.removeBoard(boardId, this);
+            }
+        });
+    }
+
+    /**
+     * Marks the board as in use, when a client looks it up to join it
+     */
+    void touch() {
+        idleSince = 0;
+    }
+
     /**
      * Returns true if new user's username has not been used already
      * @param username username
      * @return boolean
      */
     boolean isValidUsername(String username) {
-        for (User user: userList) {
-            if (user.getUsername().equalsIgnoreCase(username)) {
-                return false;
-            }
-        }
-        return true;
+        return !userRegistry.contains(username);
     }
 
     /**
      * Sends all users the updated user list
      */
     private void refreshUserList() {
-        adminGUI.updateUserList();
+        updateAdminUserList();
         String update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.USER_LIST,
                 getUserList());
         updateServer(update);
@@ -266,19 +733,106 @@ public class ServerController {
      */
     public ArrayList<String> getUserList() {
         ArrayList<String> usernameList = new ArrayList<>();
-        for (User user: userList) {
+        for (User user: userRegistry.snapshot()) {
             usernameList.add(user.getUsername());
         }
         return usernameList;
     }
 
     /**
-     * Disconnects all users and exits the program
+     * Disconnects the users of every board and exits the program
      */
     public void shutDown() {
+        boards.shutDown();
+    }
+
+    /**
+     * Tells all users that the server is shutting down
+     */
+    void notifyShutDown() {
         String update = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.SHUT_DOWN,
                 MessageProtocol.SHUT_DOWN);
         updateServer(update);
-        server.exitProgram();
+    }
+
+    /**
+     * Waits until every message queued for the clients has been written or the deadline has passed
+     * @param deadline deadline in epoch milliseconds
+     */
+    void awaitClients(long deadline) {
+        for (User user: userRegistry.snapshot()) {
+            if (!user.isAdmin()) {
+                user.getServerRequestHandler().awaitWritten(deadline);
+            }
+        }
+    }
+
+    /**
+     * Repaints the admin GUI's canvas after the board has changed, if there is an admin GUI
+     */
+    private void repaintAdminCanvas() {
+        if (adminGUI != null) {
+            adminGUI.getCanvas().repaint();
+        }
+    }
+
+    /**
+     * Repaints an area of the admin GUI's canvas changed by a drawing, if there is an admin GUI
+     * @param area changed area
+     */
+    private void repaintAdminCanvas(Rectangle area) {
+        if (adminGUI != null) {
+            adminGUI.getCanvas().repaintArea(area);
+        }
+    }
+
+    /**
+     * Updates the admin GUI's user list, if there is an admin GUI
+     */
+    private void updateAdminUserList() {
+        if (adminGUI != null) {
+            adminGUI.updateUserList();
+        }
+    }
+
+    /**
+     * Updates the admin GUI's waiting join requests, if there is an admin GUI
+     */
+    private void updateAdminJoinRequests() {
+        if (adminGUI != null) {
+            adminGUI.updateJoinRequests();
+        }
+    }
+
+    /**
+     * Returns the board holding the whiteboard's state
+     * @return board
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Returns the id of the board
+     * @return board id
+     */
+    public String getBoardId() {
+        return boardId;
+    }
+
+    /**
+     * Returns the server's startup options
+     * @return options
+     */
+    ServerOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns the policy applied to clients that fall behind
+     * @return slow consumer policy
+     */
+    SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
     }
 }
\ No newline at end of file
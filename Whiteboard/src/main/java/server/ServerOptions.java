@@ -0,0 +1,412 @@
+package server;
+import io.ImageHandler;
+import io.ThreadHandler;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Optional startup flags given after the server's required arguments, in the form --name=value
+ */
+class ServerOptions {
+
+    // Transport Modes
+    static final String TRANSPORT_BLOCKING = "blocking";
+    static final String TRANSPORT_NIO = "nio";
+
+    // Flags
+    private final String FLAG_TRANSPORT = "--transport=";
+    private final String FLAG_EVENT_LOOPS = "--event-loops=";
+    private final String FLAG_THREADS = "--threads=";
+    private final String FLAG_QUEUE_CAPACITY = "--queue-capacity=";
+    private final String FLAG_SLOW_CONSUMER = "--slow-consumer=";
+    private final String FLAG_BACKLOG_THRESHOLD = "--backlog-threshold=";
+    private final String FLAG_BACKLOG_DEADLINE = "--backlog-deadline=";
+    private final String FLAG_BATCH_TICK = "--batch-tick=";
+    private final String FLAG_ADMISSION = "--admission=";
+    private final String FLAG_AUTO_APPROVE = "--auto-approve=";
+    private final String FLAG_HEADLESS = "--headless";
+    private final String FLAG_BOARD_WORKERS = "--board-workers=";
+    private final String FLAG_MAX_BOARDS = "--max-boards=";
+    private final String FLAG_BOARD_IDLE_TIMEOUT = "--board-idle-timeout=";
+    private final String FLAG_SNAPSHOT_WORKERS = "--snapshot-workers=";
+    private final String FLAG_SNAPSHOT_FORMAT = "--snapshot-format=";
+    private final String FLAG_PNG_LEVEL = "--png-level=";
+    private final String FLAG_HEARTBEAT_INTERVAL = "--heartbeat-interval=";
+    private final String FLAG_IDLE_TIMEOUT = "--idle-timeout=";
+    private final String FLAG_OP_LOG = "--op-log=";
+    private final String FLAG_RESUME_WINDOW = "--resume-window=";
+    private final String FLAG_CLUSTER_PORT = "--cluster-port=";
+    private final String FLAG_CLUSTER_LEADER = "--cluster-leader=";
+
+    // Defaults
+    private final int MAX_DEFAULT_EVENT_LOOPS = 4;
+    private final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private final int DEFAULT_BACKLOG_THRESHOLD = 256;
+    private final long DEFAULT_BACKLOG_DEADLINE = 5000;
+    private final int DEFAULT_MAX_BOARDS = 64;
+    private final long DEFAULT_BOARD_IDLE_TIMEOUT = 300000;
+    private final long DEFAULT_HEARTBEAT_INTERVAL = 10000;
+    private final long DEFAULT_IDLE_TIMEOUT = 30000;
+    private final int DEFAULT_OP_LOG_CAPACITY = 4096;
+    private final long DEFAULT_RESUME_WINDOW = 60000;
+
+    private String transport;
+    private int eventLoops;
+    private String threadMode;
+    private int queueCapacity;
+    private String slowConsumerPolicy;
+    private int backlogThreshold;
+    private long backlogDeadline;
+    private long batchTick;
+    private String admissionPolicy;
+    private Pattern autoApprovePattern;
+    private boolean isHeadless;
+    private int boardWorkers;
+    private int maxBoards;
+    private long boardIdleTimeout;
+    private int snapshotWorkers;
+    private String snapshotFormat;
+    private int pngLevel;
+    private long heartbeatInterval;
+    private long idleTimeout;
+    private int opLogCapacity;
+    private long resumeWindow;
+    private int clusterPort;
+    private String clusterLeaderHost;
+    private int clusterLeaderPort;
+
+    /**
+     * ServerOptions constructor with default settings
+     */
+    ServerOptions() {
+        transport = TRANSPORT_BLOCKING;
+        eventLoops = Math.min(MAX_DEFAULT_EVENT_LOOPS, Runtime.getRuntime().availableProcessors());
+        threadMode = ThreadHandler.PLATFORM;
+        queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        slowConsumerPolicy = SlowConsumerPolicy.COALESCE;
+        backlogThreshold = DEFAULT_BACKLOG_THRESHOLD;
+        backlogDeadline = DEFAULT_BACKLOG_DEADLINE;
+        batchTick = 0;
+        admissionPolicy = null;
+        autoApprovePattern = null;
+        isHeadless = false;
+        boardWorkers = Runtime.getRuntime().availableProcessors();
+        maxBoards = DEFAULT_MAX_BOARDS;
+        boardIdleTimeout = DEFAULT_BOARD_IDLE_TIMEOUT;
+        snapshotWorkers = Runtime.getRuntime().availableProcessors();
+        snapshotFormat = ImageHandler.FORMAT_PNG;
+        pngLevel = ImageHandler.DEFAULT_LEVEL;
+        heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+        idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        opLogCapacity = DEFAULT_OP_LOG_CAPACITY;
+        resumeWindow = DEFAULT_RESUME_WINDOW;
+        clusterPort = 0;
+        clusterLeaderHost = null;
+        clusterLeaderPort = 0;
+    }
+
+    /**
+     * Applies a single optional flag
+     * @param arg flag argument
+     * @return true if the flag is recognised and its value is valid
+     */
+    boolean parse(String arg) {
+        try {
+            if (arg.equals(FLAG_HEADLESS)) {
+                isHeadless = true;
+                return true;
+            } else if (arg.startsWith(FLAG_TRANSPORT)) {
+                transport = arg.substring(FLAG_TRANSPORT.length());
+                return transport.equals(TRANSPORT_BLOCKING) || transport.equals(TRANSPORT_NIO);
+            } else if (arg.startsWith(FLAG_EVENT_LOOPS)) {
+                eventLoops = Integer.parseInt(arg.substring(FLAG_EVENT_LOOPS.length()));
+                return eventLoops > 0;
+            } else if (arg.startsWith(FLAG_THREADS)) {
+                threadMode = arg.substring(FLAG_THREADS.length());
+                return new ThreadHandler().isValidMode(threadMode);
+            } else if (arg.startsWith(FLAG_QUEUE_CAPACITY)) {
+                queueCapacity = Integer.parseInt(arg.substring(FLAG_QUEUE_CAPACITY.length()));
+                return queueCapacity > 0;
+            } else if (arg.startsWith(FLAG_SLOW_CONSUMER)) {
+                slowConsumerPolicy = arg.substring(FLAG_SLOW_CONSUMER.length());
+                return slowConsumerPolicy.equals(SlowConsumerPolicy.COALESCE)
+                        || slowConsumerPolicy.equals(SlowConsumerPolicy.DISCONNECT);
+            } else if (arg.startsWith(FLAG_BACKLOG_THRESHOLD)) {
+                backlogThreshold = Integer.parseInt(arg.substring(FLAG_BACKLOG_THRESHOLD.length()));
+                return backlogThreshold > 0;
+            } else if (arg.startsWith(FLAG_BACKLOG_DEADLINE)) {
+                backlogDeadline = Long.parseLong(arg.substring(FLAG_BACKLOG_DEADLINE.length()));
+                return backlogDeadline >= 0;
+            } else if (arg.startsWith(FLAG_BATCH_TICK)) {
+                batchTick = Long.parseLong(arg.substring(FLAG_BATCH_TICK.length()));
+                return batchTick >= 0;
+            } else if (arg.startsWith(FLAG_ADMISSION)) {
+                admissionPolicy = arg.substring(FLAG_ADMISSION.length());
+                return admissionPolicy.equals(AdmissionQueue.MANUAL) || admissionPolicy.equals(AdmissionQueue.AUTO);
+            } else if (arg.startsWith(FLAG_AUTO_APPROVE)) {
+                autoApprovePattern = Pattern.compile(arg.substring(FLAG_AUTO_APPROVE.length()));
+                return true;
+            } else if (arg.startsWith(FLAG_BOARD_WORKERS)) {
+                boardWorkers = Integer.parseInt(arg.substring(FLAG_BOARD_WORKERS.length()));
+                return boardWorkers > 0;
+            } else if (arg.startsWith(FLAG_MAX_BOARDS)) {
+                maxBoards = Integer.parseInt(arg.substring(FLAG_MAX_BOARDS.length()));
+                return maxBoards > 0;
+            } else if (arg.startsWith(FLAG_BOARD_IDLE_TIMEOUT)) {
+                boardIdleTimeout = Long.parseLong(arg.substring(FLAG_BOARD_IDLE_TIMEOUT.length()));
+                return boardIdleTimeout >= 0;
+            } else if (arg.startsWith(FLAG_SNAPSHOT_WORKERS)) {
+                snapshotWorkers = Integer.parseInt(arg.substring(FLAG_SNAPSHOT_WORKERS.length()));
+                return snapshotWorkers > 0;
+            } else if (arg.startsWith(FLAG_SNAPSHOT_FORMAT)) {
+                snapshotFormat = arg.substring(FLAG_SNAPSHOT_FORMAT.length());
+                return ImageHandler.isValidFormat(snapshotFormat);
+            } else if (arg.startsWith(FLAG_PNG_LEVEL)) {
+                pngLevel = Integer.parseInt(arg.substring(FLAG_PNG_LEVEL.length()));
+                return pngLevel >= 0 && pngLevel <= ImageHandler.MAX_LEVEL;
+            } else if (arg.startsWith(FLAG_HEARTBEAT_INTERVAL)) {
+                heartbeatInterval = Long.parseLong(arg.substring(FLAG_HEARTBEAT_INTERVAL.length()));
+                return heartbeatInterval >= 0;
+            } else if (arg.startsWith(FLAG_IDLE_TIMEOUT)) {
+                idleTimeout = Long.parseLong(arg.substring(FLAG_IDLE_TIMEOUT.length()));
+                return idleTimeout > 0;
+            } else if (arg.startsWith(FLAG_OP_LOG)) {
+                opLogCapacity = Integer.parseInt(arg.substring(FLAG_OP_LOG.length()));
+                return opLogCapacity > 0;
+            } else if (arg.startsWith(FLAG_RESUME_WINDOW)) {
+                resumeWindow = Long.parseLong(arg.substring(FLAG_RESUME_WINDOW.length()));
+                return resumeWindow >= 0;
+            } else if (arg.startsWith(FLAG_CLUSTER_PORT)) {
+                clusterPort = Integer.parseInt(arg.substring(FLAG_CLUSTER_PORT.length()));
+                return clusterPort > 0;
+            } else if (arg.startsWith(FLAG_CLUSTER_LEADER)) {
+                String address = arg.substring(FLAG_CLUSTER_LEADER.length());
+                int separator = address.lastIndexOf(':');
+                if (separator <= 0) {
+                    return false;
+                }
+                clusterLeaderHost = address.substring(0, separator);
+                clusterLeaderPort = Integer.parseInt(address.substring(separator + 1));
+                return clusterLeaderPort > 0;
+            }
+        } catch (NumberFormatException | PatternSyntaxException e) {
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if clients are served by the non-blocking selector transport
+     * @return boolean
+     */
+    boolean isNioTransport() {
+        return transport.equals(TRANSPORT_NIO);
+    }
+
+    /**
+     * Returns the number of event loop threads used by the selector transport
+     * @return event loop count
+     */
+    int getEventLoops() {
+        return eventLoops;
+    }
+
+    /**
+     * Returns the kind of thread (platform or virtual) that runs client handlers
+     * @return thread mode
+     */
+    String getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Returns the maximum number of messages queued for a single client
+     * @return queue capacity
+     */
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the policy applied to clients that fall behind (coalesce or disconnect)
+     * @return slow consumer policy
+     */
+    String getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * Returns the number of queued messages above which a client is considered slow
+     * @return backlog threshold
+     */
+    int getBacklogThreshold() {
+        return backlogThreshold;
+    }
+
+    /**
+     * Returns how long a client may stay over the backlog threshold before being disconnected
+     * @return milliseconds
+     */
+    long getBacklogDeadline() {
+        return backlogDeadline;
+    }
+
+    /**
+     * Returns how long drawings are collected before being sent as one batch
+     * @return milliseconds, or 0 if drawings are sent as they arrive
+     */
+    long getBatchTick() {
+        return batchTick;
+    }
+
+    /**
+     * Returns whether join requests wait for the admin (manual) or are approved automatically (auto). Without a
+     * chosen policy, boards the admin does not watch (all of them on a headless server) approve automatically as
+     * there is no admin to ask.
+     * @param hasAdminGUI true if the board is shown in the admin GUI
+     * @return admission policy
+     */
+    String getAdmissionPolicy(boolean hasAdminGUI) {
+        if (admissionPolicy == null) {
+            return hasAdminGUI ? AdmissionQueue.MANUAL : AdmissionQueue.AUTO;
+        }
+        return admissionPolicy;
+    }
+
+    /**
+     * Returns true if the server runs without the admin GUI
+     * @return boolean
+     */
+    boolean isHeadless() {
+        return isHeadless;
+    }
+
+    /**
+     * Returns the number of worker threads shared by all boards
+     * @return worker count
+     */
+    int getBoardWorkers() {
+        return boardWorkers;
+    }
+
+    /**
+     * Returns the maximum number of boards the server hosts at once
+     * @return board count
+     */
+    int getMaxBoards() {
+        return maxBoards;
+    }
+
+    /**
+     * Returns how long a board other than the default one may stay unused before it is removed
+     * @return milliseconds, or 0 if boards are never removed
+     */
+    long getBoardIdleTimeout() {
+        return boardIdleTimeout;
+    }
+
+    /**
+     * Returns the number of threads that encode board snapshots in the background
+     * @return worker count
+     */
+    int getSnapshotWorkers() {
+        return snapshotWorkers;
+    }
+
+    /**
+     * Returns the format board snapshots are encoded in (png, raw or rle)
+     * @return snapshot format
+     */
+    String getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    /**
+     * Returns the deflate level of PNG snapshots, or ImageHandler.DEFAULT_LEVEL
+     * @return PNG level
+     */
+    int getPngLevel() {
+        return pngLevel;
+    }
+
+    /**
+     * Returns how often every client is pinged
+     * @return milliseconds, or 0 if heartbeats are disabled
+     */
+    long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Returns how long a client may send nothing before its connection is closed
+     * @return milliseconds
+     */
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Returns the number of recent drawings kept per board for resuming clients
+     * @return op log capacity
+     */
+    int getOpLogCapacity() {
+        return opLogCapacity;
+    }
+
+    /**
+     * Returns how long a client whose connection was lost can resume its session
+     * @return milliseconds, or 0 if sessions cannot be resumed
+     */
+    long getResumeWindow() {
+        return resumeWindow;
+    }
+
+    /**
+     * Returns true if the options agree with each other, once every flag has been applied. With heartbeats on, a
+     * healthy client is only heard from once per ping, so the idle timeout must be longer than the interval.
+     * @return boolean
+     */
+    boolean isConsistent() {
+        return heartbeatInterval == 0 || idleTimeout > heartbeatInterval;
+    }
+
+    /**
+     * Returns true if the server is a node of a cluster, either as its leader or as a follower
+     * @return boolean
+     */
+    boolean isClustered() {
+        return clusterPort > 0 || clusterLeaderHost != null;
+    }
+
+    /**
+     * Returns the port the cluster leader accepts other nodes on
+     * @return port number, or 0 if none
+     */
+    int getClusterPort() {
+        return clusterPort;
+    }
+
+    /**
+     * Returns the host of the cluster leader this node follows
+     * @return host, or null if this node is not a follower
+     */
+    String getClusterLeaderHost() {
+        return clusterLeaderHost;
+    }
+
+    /**
+     * Returns the cluster port of the leader this node follows
+     * @return port number
+     */
+    int getClusterLeaderPort() {
+        return clusterLeaderPort;
+    }
+
+    /**
+     * Returns the pattern of usernames approved without waiting for the admin
+     * @return pattern, or null if none
+     */
+    Pattern getAutoApprovePattern() {
+        return autoApprovePattern;
+    }
+}
@@ -1,35 +1,73 @@
 package server;
+import io.BinaryFrameHandler;
+import io.DeflateCodec;
+import io.FrameHandler;
 import io.ImageHandlerException;
 import io.JSONHandler;
+import io.MessageCodec;
+import io.OutgoingMessage;
 import java.io.*;
 import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Executor;
 import io.JSONHandlerException;
 import io.MessageProtocol;
 
 public class ServerRequestHandler implements Runnable {
 
     private Socket clientSocket;
-    private ServerController serverController;
+    private BoardDirectory boards;
+    private volatile ServerController serverController;    // Board joined by the client, null before joining
     private JSONHandler jsonHandler;
-    private boolean isPermitted;
+    private volatile boolean isPermitted;
     private String username;
+    private String sessionToken;        // Identifies the client's session if it has to reconnect
+    private Executor readerExecutor;
+    private OutboundQueue outbound;
+    private volatile long lastSeen;     // Epoch milliseconds of the last message received from the client
+    private volatile MessageCodec codec;        // Codec of incoming messages, and of outgoing ones after the ack
+    private MessageCodec writeCodec;            // Codec of outgoing messages, only used by the client's writer
+    private volatile OutgoingMessage codecAck;  // Message confirming the negotiated codec, the last one sent as JSON
 
     private DataInputStream in;
     private DataOutputStream out;
 
+    private final long WRITE_POLL_INTERVAL = 10;
+    private final int WRITE_BUFFER_SIZE = 8192;
+    private final int MAX_WRITE_BATCH = 64;
+
     private final String ERROR_STREAM = "Unable to maintain input/output streams from/to client socket.";
     private final String ERROR_OUTGOING = "Unable to deliver out outgoing message.";
+    private final String ERROR_ENCODE = "Unable to encode an outgoing message, it was skipped: ";
+    private final String ERROR_CLOSE_SOCKET = "Unable to close the client socket.";
+    private final String COMPRESSION_STATISTICS = "Compression for %s: %s";
+    private final String SLOW_CONSUMER = "Client is not keeping up with outgoing messages, closing the connection.";
 
     /**
      * ServerRequestHandler constructor
      * @param clientSocket client socket
-     * @param serverController server controller
+     * @param boards boards hosted by the server
+     * @param readerExecutor executor that runs the client's incoming message loop
      */
-    public ServerRequestHandler(Socket clientSocket, ServerController serverController) {
+    ServerRequestHandler(Socket clientSocket, BoardDirectory boards, Executor readerExecutor) {
+        this(boards);
         this.clientSocket = clientSocket;
-        this.serverController = serverController;
+        this.readerExecutor = readerExecutor;
+    }
+
+    /**
+     * ServerRequestHandler constructor for transports that manage their own client channel
+     * @param boards boards hosted by the server
+     */
+    ServerRequestHandler(BoardDirectory boards) {
+        this.boards = boards;
         this.jsonHandler = new JSONHandler();
+        this.outbound = new OutboundQueue(boards.getOptions().getQueueCapacity());
+        this.codec = new FrameHandler();
+        this.writeCodec = codec;
         isPermitted = false;
+        lastSeen = System.currentTimeMillis();
+        boards.getHeartbeatMonitor().register(this);
     }
 
     /**
@@ -38,33 +76,73 @@ public class ServerRequestHandler implements Runnable {
     public void run() {
         try {
             in = new DataInputStream(clientSocket.getInputStream());
-            out = new DataOutputStream(clientSocket.getOutputStream());
-            String joinRequest = in.readUTF();    // Request from client to join whiteboard
+            out = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream(), WRITE_BUFFER_SIZE));
+            readerExecutor.execute(this::writeMessages);
+            String joinRequest = codec.read(in);    // Request from client to join whiteboard
+            messageReceived();
             process(joinRequest);
         } catch (IOException e) {
             System.out.println(ERROR_STREAM);
+            closeConnection();
+            return;
         } catch (JSONHandlerException | ImageHandlerException e) {
             System.out.println(e.getMessage());
         }
 
         // Thread to receive incoming messages from client
-        Thread inputStream = new Thread(() -> {
-            while (isPermitted) {
-                // If user is given permission from the admin to use the whiteboard
+        readerExecutor.execute(() -> {
+            while (true) {
                 try {
-                    String input = in.readUTF();
-                    process(input);
+                    String input = codec.read(in);
+                    messageReceived();
+                    if (isPermitted) {
+                        // If user is given permission from the admin to use the whiteboard
+                        process(input);
+                    }
                 } catch (IOException e) {
                     // Client disconnects
-                    isPermitted = false;
-                    serverController.removeUser(username);
+                    clientDisconnected();
+                    closeConnection();
                     break;
                 } catch (JSONHandlerException | ImageHandlerException e) {
                     System.out.println(e.getMessage());
                 }
             }
         });
-        inputStream.start();
+    }
+
+    /**
+     * Writes queued messages to the client in order until the connection is closed. The messages already queued
+     * behind the one taken are written with it and flushed to the socket together; frames larger than the stream's
+     * buffer are written to the socket directly rather than copied into it.
+     */
+    private void writeMessages() {
+        try {
+            OutgoingMessage message;
+            while ((message = outbound.take()) != null) {
+                int batched = 0;
+                do {
+                    byte[] frame = encodeOrSkip(message);
+                    if (frame != null) {
+                        out.write(frame);
+                    }
+                    batched++;
+                } while (batched < MAX_WRITE_BATCH && (message = outbound.poll()) != null);
+                out.flush();
+                for (int i = 0; i < batched; i++) {
+                    outbound.written();
+                }
+                if (outbound.isClosed()) {
+                    // The batch may have taken the end of the queue
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(ERROR_OUTGOING);
+            closeConnection();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -72,15 +150,24 @@ public class ServerRequestHandler implements Runnable {
      * @param input client incoming message
      * @throws JSONHandlerException JSON processing error
      */
-    private void process(String input) throws JSONHandlerException, ImageHandlerException {
+    void process(String input) throws JSONHandlerException, ImageHandlerException {
         String type = jsonHandler.processString(input, MessageProtocol.TYPE);
         switch (type) {
 
             case MessageProtocol.JOIN:
 
-                // Join request
+                // Join request, for the default board if the client does not name one
+                if (serverController != null) {
+                    // Already joined a board
+                    break;
+                }
                 String username = jsonHandler.processString(input, type);
-                if (serverController.isValidUsername(username)) {
+                negotiateCodec(input);
+                serverController = boards.getBoard(jsonHandler.processString(input, MessageProtocol.BOARD));
+                if (serverController == null) {
+                    // Invalid board id, or no room for another board
+                    rejectRequest();
+                } else if (serverController.isValidUsername(username)) {
                     // If username has not been taken
                     serverController.joinRequest(username, this);
                 } else {
@@ -88,18 +175,40 @@ public class ServerRequestHandler implements Runnable {
                 }
                 break;
 
+            case MessageProtocol.RESUME:
+
+                // Reconnecting client resuming its session
+                if (serverController != null) {
+                    // Already joined a board
+                    break;
+                }
+                negotiateCodec(input);
+                serverController = boards.getBoard(jsonHandler.processString(input, MessageProtocol.BOARD));
+                if (serverController == null) {
+                    rejectRequest();
+                } else {
+                    serverController.resumeRequest(jsonHandler.processString(input, type),
+                            jsonHandler.processLong(input, MessageProtocol.SEQ, -1), this);
+                }
+                break;
+
             case MessageProtocol.CANVAS:
 
                 // Canvas changes
-                serverController.updateServer(input);
+                serverController.updateCanvas(input);
+                break;
+
+            case MessageProtocol.PING:
+
+                // Heartbeat from the client
+                sendMessage(jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.PONG,
+                        MessageProtocol.PONG));
                 break;
 
             case MessageProtocol.REFRESH:
 
-                // Canvas refresh
-                String state = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.STATE,
-                        serverController.getState());
-                sendMessage(state);
+                // Canvas refresh, of the tiles changed since the client's last drawing if it sends one
+                serverController.refreshClient(this, jsonHandler.processLong(input, MessageProtocol.SEQ, -1));
                 break;
 
             default:
@@ -108,28 +217,208 @@ public class ServerRequestHandler implements Runnable {
     }
 
     /**
-     * Send a message to client
+     * Switches to the codec and compression requested in the client's join or resume request and acknowledges them.
+     * The acknowledgement is still sent as JSON, the client's later messages are read with the new codec.
+     * @param input join or resume request
+     * @throws JSONHandlerException JSON processing error
+     */
+    private void negotiateCodec(String input) throws JSONHandlerException {
+        boolean isBinary = MessageProtocol.CODEC_BINARY.equals(
+                jsonHandler.processString(input, MessageProtocol.CODEC));
+        boolean isDeflate = MessageProtocol.COMPRESSION_DEFLATE.equals(
+                jsonHandler.processString(input, MessageProtocol.COMPRESSION));
+        if (!isBinary && !isDeflate) {
+            return;
+        }
+        MessageCodec negotiated = isBinary ? new BinaryFrameHandler() : new FrameHandler();
+        String ack = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.CODEC,
+                isBinary ? MessageProtocol.CODEC_BINARY : MessageProtocol.CODEC_JSON);
+        if (isDeflate) {
+            negotiated = new DeflateCodec(negotiated);
+            ack = jsonHandler.addJSONField(ack, MessageProtocol.COMPRESSION, MessageProtocol.COMPRESSION_DEFLATE);
+        }
+        codec = negotiated;
+        codecAck = new OutgoingMessage(ack);
+        sendMessage(codecAck);
+    }
+
+    /**
+     * Encodes an outgoing message into a frame, switching to the negotiated codec once its acknowledgement has been
+     * encoded (client's writer only)
+     * @param message message
+     * @return frame bytes, which may be shared with other clients
+     * @throws IOException message cannot be encoded
+     */
+    private byte[] encodeFrame(OutgoingMessage message) throws IOException {
+        byte[] frame = writeCodec.encodeFrame(message);
+        if (message == codecAck) {
+            writeCodec = codec;
+        }
+        return frame;
+    }
+
+    /**
+     * Encodes an outgoing message into a frame. A message the client's codec cannot encode is skipped rather than
+     * closing the connection, and a skipped drawing is made up for with a refresh of the whole board (client's
+     * writer only).
+     * @param message message
+     * @return frame bytes, or null if the message was skipped
+     */
+    byte[] encodeOrSkip(OutgoingMessage message) {
+        try {
+            return encodeFrame(message);
+        } catch (IOException e) {
+            System.out.println(ERROR_ENCODE + e.getMessage());
+            if (isPermitted && isDrawing(message)) {
+                serverController.refreshClient(this, -1);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if the message carries drawings, rather than the board state a refresh would send again
+     * @param message message
+     * @return boolean
+     */
+    private boolean isDrawing(OutgoingMessage message) {
+        try {
+            String type = jsonHandler.processString(message.getMessage(), MessageProtocol.TYPE);
+            return MessageProtocol.CANVAS.equals(type) || MessageProtocol.CANVAS_BATCH.equals(type);
+        } catch (JSONHandlerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the codec incoming messages are decoded with
+     * @return codec
+     */
+    MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Records that a message (of any type) has been received, which shows the client is alive
+     */
+    void messageReceived() {
+        lastSeen = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns when the last message was received from the client
+     * @return epoch milliseconds
+     */
+    long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * Queues a message to client, to be written by the client's writer
      * @param message message
      */
     void sendMessage(String message) {
+        sendMessage(new OutgoingMessage(message));
+    }
+
+    /**
+     * Queues a message to client that may also be queued to other clients, whose frame is then only encoded once
+     * @param message message
+     */
+    void sendMessage(OutgoingMessage message) {
+        if (outbound.offer(message)) {
+            messageQueued();
+            if (serverController != null) {
+                serverController.getSlowConsumerPolicy().messageQueued(this);
+            }
+        } else if (isConnected()) {
+            System.out.println(SLOW_CONSUMER);
+            if (serverController != null) {
+                serverController.getSlowConsumerPolicy().queueOverflowed(this);
+            }
+            closeConnection();
+        }
+    }
+
+    /**
+     * Notifies the client's writer that a message has been queued (the blocking writer waits on the queue itself)
+     */
+    void messageQueued() {}
+
+    /**
+     * Closes the client socket, which also ends the client's reader and writer
+     */
+    void closeConnection() {
+        outbound.close();
         try {
-            out.writeUTF(message);
+            clientSocket.close();
         } catch (IOException e) {
-            System.out.println(ERROR_OUTGOING);
+            System.out.println(ERROR_CLOSE_SOCKET);
         }
     }
 
     /**
-     * Sends the client the current board state upon accepting their request
-     * @param username
-     * @param state
+     * Returns true if the connection has not been closed
+     * @return boolean
      */
-    void acceptRequest(String username, String state) {
+    boolean isConnected() {
+        return !outbound.isClosed();
+    }
+
+    /**
+     * Waits until every queued message has been written or the deadline has passed
+     * @param deadline deadline in epoch milliseconds
+     */
+    void awaitWritten(long deadline) {
+        while (outbound.hasUnwritten() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(WRITE_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the client's outbound message queue
+     * @return outbound queue
+     */
+    OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
+
+    /**
+     * Sends the client the current board state and their session token upon accepting their request
+     * @param username client username
+     * @param state state chunk messages followed by the state message, shared with the clients accepted with it
+     * @param sessionToken token the client can later resume its session with
+     */
+    void acceptRequest(String username, List<OutgoingMessage> state, String sessionToken) {
         this.username = username;
-        String response = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.STATE,
-                state);
-        sendMessage(response);
+        this.sessionToken = sessionToken;
         isPermitted = true;     // Permits client to make changes to session's canvas
+        for (int i = 0; i < state.size() - 1; i++) {
+            sendMessage(state.get(i));
+        }
+        sendMessage(jsonHandler.addJSONField(state.get(state.size() - 1).getMessage(), MessageProtocol.TOKEN,
+                sessionToken));
+    }
+
+    /**
+     * Confirms a resumed session to the client, then sends what it missed while disconnected
+     * @param username client username
+     * @param sessionToken client's session token
+     * @param missed missed drawings, or a state message
+     */
+    void acceptResume(String username, String sessionToken, List<String> missed) {
+        this.username = username;
+        this.sessionToken = sessionToken;
+        isPermitted = true;
+        sendMessage(jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.RESUME, sessionToken));
+        for (String message : missed) {
+            sendMessage(message);
+        }
     }
 
     /**
@@ -144,9 +433,42 @@ public class ServerRequestHandler implements Runnable {
     /**
      * Sends a response to inform client to try with another username
      */
-    private void invalidRequest() {
+    void invalidRequest() {
         String response = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.INVALID,
                 MessageProtocol.INVALID);
         sendMessage(response);
     }
+
+    /**
+     * Removes the client from the session (keeping it resumable), or their join request from the admission queue,
+     * once their connection has been lost
+     */
+    void clientDisconnected() {
+        if (codec instanceof DeflateCodec) {
+            System.out.println(String.format(COMPRESSION_STATISTICS, username,
+                    ((DeflateCodec) codec).getStatistics()));
+        }
+        if (isPermitted) {
+            isPermitted = false;
+            serverController.disconnectUser(username, this, sessionToken);
+        } else if (serverController != null) {
+            serverController.cancelJoinRequest(this);
+        }
+    }
+
+    /**
+     * Returns true if client has been permitted to join the whiteboard
+     * @return boolean
+     */
+    boolean isPermitted() {
+        return isPermitted;
+    }
+
+    /**
+     * Returns the client's username once their request has been accepted
+     * @return username
+     */
+    String getUsername() {
+        return username;
+    }
 }
\ No newline at end of file
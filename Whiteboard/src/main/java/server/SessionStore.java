@@ -0,0 +1,83 @@
+package server;
+import java.security.SecureRandom;
+import java.util.AbstractMap;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sessions of a board's users whose connection was lost, kept for a limited time so the user can resume without
+ * asking the admin again. Each session is identified by a random token given to the client when it joined, which it
+ * keeps when it resumes, so each suspension has its own deadline and only expires itself.
+ */
+class SessionStore {
+
+    // Username and deadline (System.nanoTime) of each suspension, keyed by session token
+    private ConcurrentHashMap<String, Map.Entry<String, Long>> suspended;
+    private ScheduledExecutorService timer;
+    private SecureRandom random;
+    private long window;
+
+    private final int TOKEN_BYTES = 18;
+
+    /**
+     * SessionStore constructor
+     * @param timer timer that expires suspended sessions
+     * @param window milliseconds a lost session can be resumed for, or 0 to disable resuming
+     */
+    SessionStore(ScheduledExecutorService timer, long window) {
+        this.suspended = new ConcurrentHashMap<>();
+        this.timer = timer;
+        this.window = window;
+        this.random = new SecureRandom();
+    }
+
+    /**
+     * Returns a new session token
+     * @return token
+     */
+    String createToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Keeps the session of a user whose connection was lost until it is resumed or expires
+     * @param token session token
+     * @param username username
+     */
+    void suspend(String token, String username) {
+        if (window <= 0) {
+            return;
+        }
+        Map.Entry<String, Long> suspension = new AbstractMap.SimpleImmutableEntry<>(username,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(window));
+        suspended.put(token, suspension);
+        // Only expires this suspension, not a later one of the same session
+        timer.schedule(() -> suspended.remove(token, suspension), window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns true if no lost session can be resumed
+     * @return boolean
+     */
+    boolean isEmpty() {
+        return suspended.isEmpty();
+    }
+
+    /**
+     * Takes a suspended session so it can be resumed
+     * @param token session token
+     * @return username of the session, or null if there is no such session or it has expired
+     */
+    String resume(String token) {
+        Map.Entry<String, Long> suspension = token == null ? null : suspended.remove(token);
+        if (suspension == null || System.nanoTime() - suspension.getValue() > 0) {
+            return null;
+        }
+        return suspension.getKey();
+    }
+}
@@ -0,0 +1,202 @@
+package server;
+import io.ImageHandlerException;
+import io.JSONHandler;
+import io.JSONHandlerException;
+import io.MessageProtocol;
+import io.OutgoingMessage;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decides what happens to a client whose outgoing backlog grows past a threshold. The coalesce policy replaces the
+ * client's queued canvas changes and states with a single state snapshot, the disconnect policy drops the client
+ * once the backlog has stayed over the threshold for longer than a deadline.
+ */
+class SlowConsumerPolicy {
+
+    // Policies
+    static final String COALESCE = "coalesce";
+    static final String DISCONNECT = "disconnect";
+
+    private ServerController serverController;
+    private JSONHandler jsonHandler;
+    private String policy;
+    private int threshold;
+    private long deadline;
+    private Executor coalesceExecutor;
+
+    // Number of times each policy fired
+    private AtomicLong coalesced;
+    private AtomicLong deadlineDisconnects;
+    private AtomicLong overflowDisconnects;
+
+    private final String POLICY_FIRED = "Slow consumer policy fired for %s (%s). Coalesced: %d, disconnected " +
+            "after deadline: %d, disconnected on full queue: %d";
+    private final String ERROR_COALESCE = "Unable to coalesce a slow client's backlog into a snapshot.";
+
+    /**
+     * SlowConsumerPolicy constructor
+     * @param serverController server controller
+     * @param coalesceExecutor executor that builds snapshots for the coalesce policy
+     * @param policy coalesce or disconnect
+     * @param threshold number of queued messages above which a client is considered slow
+     * @param deadline milliseconds a client may stay over the threshold (disconnect policy)
+     */
+    SlowConsumerPolicy(ServerController serverController, Executor coalesceExecutor, String policy, int threshold,
+                       long deadline) {
+        this.serverController = serverController;
+        this.jsonHandler = new JSONHandler();
+        this.policy = policy;
+        this.threshold = threshold;
+        this.deadline = deadline;
+        this.coalesced = new AtomicLong(0);
+        this.deadlineDisconnects = new AtomicLong(0);
+        this.overflowDisconnects = new AtomicLong(0);
+        this.coalesceExecutor = coalesceExecutor;
+    }
+
+    /**
+     * Checks a client's backlog after a message has been queued for it
+     * @param handler client's request handler
+     */
+    void messageQueued(ServerRequestHandler handler) {
+        OutboundQueue outbound = handler.getOutboundQueue();
+        if (outbound.size() <= threshold) {
+            outbound.setBacklogSince(0);
+            return;
+        }
+        if (policy.equals(COALESCE)) {
+            if (outbound.startCoalescing()) {
+                coalesceExecutor.execute(() -> coalesce(handler));
+            }
+        } else {
+            long now = System.currentTimeMillis();
+            if (outbound.getBacklogSince() == 0) {
+                outbound.setBacklogSince(now);
+            } else if (now - outbound.getBacklogSince() > deadline) {
+                deadlineDisconnects.incrementAndGet();
+                report(handler);
+                handler.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * Records a client being disconnected because its queue is completely full
+     * @param handler client's request handler
+     */
+    void queueOverflowed(ServerRequestHandler handler) {
+        overflowDisconnects.incrementAndGet();
+        report(handler);
+    }
+
+    /**
+     * Replaces the canvas changes and older states queued for a client with a snapshot of the canvas. The snapshot
+     * is taken after the queue is marked and only messages queued up to the mark are dropped, so every dropped change
+     * (which was drawn before being queued) is part of it. Drawings waiting to be batched are sent first, so they are
+     * dropped with the others rather than sent again after the snapshot. A session token carried by a dropped state
+     * is carried over to the snapshot.
+     * @param handler client's request handler
+     */
+    private void coalesce(ServerRequestHandler handler) {
+        OutboundQueue outbound = handler.getOutboundQueue();
+        try {
+            serverController.flushDrawings();
+            long mark = outbound.mark();
+            List<String> state = serverController.createStateMessages(-1);
+            AtomicReference<String> token = new AtomicReference<>();
+            outbound.removeUpTo(mark, message -> isDroppable(message, token));
+            if (token.get() != null) {
+                int last = state.size() - 1;
+                state.set(last, jsonHandler.addJSONField(state.get(last), MessageProtocol.TOKEN, token.get()));
+            }
+            if (offerFirst(outbound, state)) {
+                coalesced.incrementAndGet();
+                report(handler);
+                handler.messageQueued();
+            } else if (handler.isConnected()) {
+                overflowDisconnects.incrementAndGet();
+                report(handler);
+                handler.closeConnection();
+            }
+        } catch (ImageHandlerException e) {
+            System.out.println(ERROR_COALESCE);
+        } finally {
+            outbound.finishCoalescing();
+        }
+    }
+
+    /**
+     * Queues the messages of a snapshot ahead of every other queued message, in order
+     * @param outbound client's outbound queue
+     * @param state snapshot messages
+     * @return false if the queue is full or closed
+     */
+    private boolean offerFirst(OutboundQueue outbound, List<String> state) {
+        for (int i = state.size() - 1; i >= 0; i--) {
+            if (!outbound.offerFirst(new OutgoingMessage(state.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the message only carries canvas changes or an older state of the canvas, which a snapshot
+     * replaces
+     * @param message queued message
+     * @param token set to the session token of a dropped state that carries one
+     * @return boolean
+     */
+    private boolean isDroppable(String message, AtomicReference<String> token) {
+        try {
+            String type = jsonHandler.processString(message, MessageProtocol.TYPE);
+            if (MessageProtocol.STATE.equals(type)) {
+                String stateToken = jsonHandler.processString(message, MessageProtocol.TOKEN);
+                if (stateToken != null) {
+                    token.set(stateToken);
+                }
+                return true;
+            }
+            return MessageProtocol.CANVAS.equals(type) || MessageProtocol.CANVAS_BATCH.equals(type)
+                    || MessageProtocol.STATE_CHUNK.equals(type);
+        } catch (JSONHandlerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prints how often each policy has fired
+     * @param handler client's request handler the policy fired for
+     */
+    private void report(ServerRequestHandler handler) {
+        System.out.println(String.format(POLICY_FIRED, handler.getUsername(), policy, coalesced.get(),
+                deadlineDisconnects.get(), overflowDisconnects.get()));
+    }
+
+    /**
+     * Returns the number of times a backlog was coalesced into a snapshot
+     * @return count
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the number of clients disconnected after staying over the threshold past the deadline
+     * @return count
+     */
+    long getDeadlineDisconnects() {
+        return deadlineDisconnects.get();
+    }
+
+    /**
+     * Returns the number of clients disconnected because their queue was full
+     * @return count
+     */
+    long getOverflowDisconnects() {
+        return overflowDisconnects.get();
+    }
+}
@@ -0,0 +1,176 @@
+package server;
+import board.Board;
+import io.ImageHandler;
+import io.ImageHandlerException;
+import io.JSONHandler;
+import io.MessageProtocol;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Encodes regions of a board's image (the whole board, or only its changed tiles) as separate state chunks, so a
+ * snapshot never needs one frame larger than a chunk and a client can paint the regions as they arrive. The snapshot
+ * ends with a state message that carries its sequence number.
+ *
+ * Encoded regions are cached against the version of their tiles, so a region is encoded at most once per version no
+ * matter how many clients join or refresh, even at the same time. Snapshots are encoded from a copy of the board's
+ * pixels, so they can be encoded in the background while drawings keep being applied, and the regions of a snapshot
+ * are encoded in parallel.
+ */
+class SnapshotEncoder {
+
+    private JSONHandler jsonHandler;
+    private ImageHandler imageHandler;
+    private ConcurrentHashMap<Rectangle, EncodedRegion> cache;
+
+    // Regions are split into bands until their encoded image fits in a chunk
+    private final int MAX_CHUNK_LENGTH = 16 * 1024;
+    private final int MAX_CACHED_REGIONS = 256;
+
+    /**
+     * SnapshotEncoder constructor
+     * @param format format regions are encoded in (png, raw or rle)
+     * @param level deflate level of PNG regions, or ImageHandler.DEFAULT_LEVEL
+     */
+    SnapshotEncoder(String format, int level) {
+        this.jsonHandler = new JSONHandler();
+        this.imageHandler = new ImageHandler(format, level);
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Encodes regions of a board into the messages of a snapshot on the calling thread
+     * @param board board, which must not change during the call
+     * @param regions regions of the board to send
+     * @param seq sequence number of the last drawing included in the board
+     * @return state chunk messages followed by the state message
+     * @throws ImageHandlerException error encoding the image
+     */
+    List<String> encode(Board board, List<Rectangle> regions, long seq) throws ImageHandlerException {
+        try {
+            return encodeAsync(board, regions, seq, Runnable::run).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof ImageHandlerException ? (ImageHandlerException) e.getCause()
+                    : new ImageHandlerException(e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes regions of a board into the messages of a snapshot in the background. Only the versions of the
+     * regions, and a copy of the image if any of them has to be encoded, are taken on the calling thread, so the board
+     * may change as soon as this returns. Each region that is not cached is encoded as its own task.
+     * @param board board, which must not change during the call
+     * @param regions regions of the board to send
+     * @param seq sequence number of the last drawing included in the board
+     * @param executor executor that encodes the regions
+     * @return state chunk messages followed by the state message, or an ImageHandlerException
+     */
+    CompletableFuture<List<String>> encodeAsync(Board board, List<Rectangle> regions, long seq, Executor executor) {
+        long[] versions = new long[regions.size()];
+        EncodedRegion[] encoded = new EncodedRegion[regions.size()];
+        BufferedImage image = null;     // Only copied if a region has to be encoded
+        for (int i = 0; i < regions.size(); i++) {
+            versions[i] = board.getVersion(regions.get(i));
+            EncodedRegion cached = cache.get(regions.get(i));
+            if (cached != null && cached.getVersion() == versions[i]) {
+                encoded[i] = cached;
+            } else if (image == null) {
+                image = board.copyImage();
+            }
+        }
+        BufferedImage copy = image;
+        ArrayList<CompletableFuture<List<String>>> parts = new ArrayList<>();
+        for (int i = 0; i < regions.size(); i++) {
+            if (encoded[i] != null) {
+                parts.add(encoded[i].getChunks());
+                continue;
+            }
+            Rectangle region = regions.get(i);
+            long version = versions[i];
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return encodeOnce(copy, region, version);
+                } catch (ImageHandlerException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor).thenCompose(EncodedRegion::getChunks));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            ArrayList<String> messages = new ArrayList<>();
+            for (CompletableFuture<List<String>> part : parts) {
+                messages.addAll(part.join());
+            }
+            // The state message completes the snapshot
+            messages.add(jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.STATE, "",
+                    MessageProtocol.SEQ, seq));
+            return messages;
+        });
+    }
+
+    /**
+     * Returns the encoded chunks of a region at a version, encoding them unless another caller already is
+     * @param image image of the board at the version
+     * @param region region
+     * @param version version of the region
+     * @return encoded region
+     * @throws ImageHandlerException error encoding the image
+     */
+    private EncodedRegion encodeOnce(BufferedImage image, Rectangle region, long version)
+            throws ImageHandlerException {
+        EncodedRegion created = new EncodedRegion(version);
+        if (cache.size() >= MAX_CACHED_REGIONS) {
+            // Mostly regions of old deltas
+            cache.clear();
+        }
+        EncodedRegion cached = cache.compute(region, (key, current) ->
+                current != null && current.getVersion() >= version ? current : created);
+        if (cached.getVersion() != version) {
+            // The region has changed since the image was taken, so this version is not worth caching
+            cached = created;
+        } else if (cached != created) {
+            return cached;
+        }
+        try {
+            ArrayList<String> chunks = new ArrayList<>();
+            encodeRegion(image, region, chunks);
+            created.complete(chunks);
+        } catch (ImageHandlerException e) {
+            created.fail(e);
+            cache.remove(region, created);
+            throw e;
+        }
+        return created;
+    }
+
+    /**
+     * Encodes a region of the image, splitting it until every part fits in a chunk
+     * @param image image
+     * @param region region
+     * @param chunks state chunk messages to add the parts to
+     * @throws ImageHandlerException error encoding the image
+     */
+    private void encodeRegion(BufferedImage image, Rectangle region, List<String> chunks)
+            throws ImageHandlerException {
+        String part = imageHandler.getImageString(image.getSubimage(region.x, region.y, region.width,
+                region.height));
+        if (part.length() > MAX_CHUNK_LENGTH && region.height > 1) {
+            // Too detailed to fit in a chunk, split it into bands of the rows that should fit
+            int bands = Math.min(region.height, Math.max(2, (part.length() + MAX_CHUNK_LENGTH - 1) / MAX_CHUNK_LENGTH));
+            for (int band = 0; band < bands; band++) {
+                int top = region.height * band / bands;
+                int bottom = region.height * (band + 1) / bands;
+                encodeRegion(image, new Rectangle(region.x, region.y + top, region.width, bottom - top), chunks);
+            }
+            return;
+        }
+        String chunk = jsonHandler.createJSONString(MessageProtocol.TYPE, MessageProtocol.STATE_CHUNK, part,
+                MessageProtocol.ROW, (long) region.y);
+        chunks.add(jsonHandler.addJSONField(chunk, MessageProtocol.COLUMN, (long) region.x));
+    }
+}
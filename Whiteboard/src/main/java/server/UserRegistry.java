@@ -0,0 +1,102 @@
+package server;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Thread-safe registry of the session's users. Usernames are looked up case-insensitively in constant time, and
+ * broadcasts iterate over a snapshot so users can join or leave while a broadcast is in progress.
+ */
+class UserRegistry {
+
+    private ConcurrentHashMap<String, User> usersByName;
+    private CopyOnWriteArrayList<User> users;      // In joining order, the admin first
+
+    /**
+     * UserRegistry constructor
+     */
+    UserRegistry() {
+        this.usersByName = new ConcurrentHashMap<>();
+        this.users = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Adds a user unless their username has already been taken
+     * @param user user
+     * @return false if the username has already been taken
+     */
+    synchronized boolean add(User user) {
+        if (usersByName.putIfAbsent(fold(user.getUsername()), user) != null) {
+            return false;
+        }
+        users.add(user);
+        return true;
+    }
+
+    /**
+     * Removes a user
+     * @param user user
+     * @return false if the user was not registered
+     */
+    synchronized boolean remove(User user) {
+        if (!usersByName.remove(fold(user.getUsername()), user)) {
+            return false;
+        }
+        users.remove(user);
+        return true;
+    }
+
+    /**
+     * Removes every user except the admin
+     * @return removed users
+     */
+    synchronized List<User> removeClients() {
+        ArrayList<User> removed = new ArrayList<>();
+        for (User user : users) {
+            if (!user.isAdmin()) {
+                usersByName.remove(fold(user.getUsername()), user);
+                removed.add(user);
+            }
+        }
+        users.removeAll(removed);
+        return removed;
+    }
+
+    /**
+     * Returns the user with the given username
+     * @param username username (any case)
+     * @return user, or null if there is none
+     */
+    User get(String username) {
+        return usersByName.get(fold(username));
+    }
+
+    /**
+     * Returns true if the username has already been taken
+     * @param username username (any case)
+     * @return boolean
+     */
+    boolean contains(String username) {
+        return usersByName.containsKey(fold(username));
+    }
+
+    /**
+     * Returns all users in joining order. Iterating over it sees a snapshot unaffected by later joins and leaves.
+     * @return users
+     */
+    List<User> snapshot() {
+        return Collections.unmodifiableList(users);
+    }
+
+    /**
+     * Returns the case-folded form of a username used as its key
+     * @param username username
+     * @return key
+     */
+    private String fold(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}